@@ -0,0 +1,82 @@
+// src/api/notificationStream.ts
+import apiClient from './apiClient';
+
+// 服务端推送的事件：unread 带最新未读数，resync 表示积压被丢弃、需要重新拉取
+export type NotificationStreamEvent =
+    | { type: 'unread'; count: number }
+    | { type: 'resync' };
+
+// 鉴权失败，重连也没用
+export class StreamUnauthorizedError extends Error {}
+
+/**
+ * 订阅 /notifications/stream (SSE)
+ * 浏览器的 EventSource 不能带 Authorization 头，这里用 fetch + ReadableStream 自己解析 SSE 帧。
+ * 连接正常结束 (服务端超时) 时 resolve，网络错误 / 非 2xx 时 reject；调用方负责重连。
+ */
+export async function openNotificationStream(
+    onEvent: (event: NotificationStreamEvent) => void,
+    onOpen: () => void,
+    signal: AbortSignal,
+): Promise<void> {
+    const token = localStorage.getItem('jwt_token');
+    const response = await fetch(`${apiClient.defaults.baseURL}/notifications/stream`, {
+        headers: {
+            Accept: 'text/event-stream',
+            ...(token ? { Authorization: `Token ${token}` } : {}),
+        },
+        credentials: 'include',
+        cache: 'no-store',
+        signal,
+    });
+
+    if (response.status === 401 || response.status === 403) {
+        throw new StreamUnauthorizedError(`stream rejected: ${response.status}`);
+    }
+    if (!response.ok || !response.body) {
+        throw new Error(`stream failed: ${response.status}`);
+    }
+    onOpen();
+
+    const reader = response.body.pipeThrough(new TextDecoderStream()).getReader();
+    let buffer = '';
+    while (true) {
+        const { value, done } = await reader.read();
+        if (done) return;
+        buffer += value.replace(/\r\n?/g, '\n');
+
+        // 一个事件以空行结束
+        let boundary: number;
+        while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+            const frame = buffer.slice(0, boundary);
+            buffer = buffer.slice(boundary + 2);
+            const event = parseFrame(frame);
+            if (event) onEvent(event);
+        }
+    }
+}
+
+function parseFrame(frame: string): NotificationStreamEvent | null {
+    let name = 'message';
+    const data: string[] = [];
+    for (const line of frame.split('\n')) {
+        // ':' 开头是注释 (心跳)
+        if (!line || line.startsWith(':')) continue;
+        const colon = line.indexOf(':');
+        const field = colon < 0 ? line : line.slice(0, colon);
+        const value = colon < 0 ? '' : line.slice(colon + 1).replace(/^ /, '');
+        if (field === 'event') name = value;
+        else if (field === 'data') data.push(value);
+    }
+
+    if (name === 'resync') return { type: 'resync' };
+    if (name === 'unread' && data.length > 0) {
+        try {
+            const payload = JSON.parse(data.join('\n')) as { count: number };
+            return { type: 'unread', count: payload.count };
+        } catch {
+            return null;
+        }
+    }
+    return null;
+}
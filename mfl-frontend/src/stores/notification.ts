@@ -1,12 +1,28 @@
 // src/stores/notification.ts
 import { defineStore } from 'pinia';
 import apiClient from '../api/apiClient';
+import { openNotificationStream, StreamUnauthorizedError } from '../api/notificationStream';
 import { useAuthStore } from './auth';
 
+// 推送断开时才退回轮询 /count
+const FALLBACK_POLL_INTERVAL = 60000;
+// 断线重连退避；服务端正常关闭 (连接到期) 后稍等再连，避免异常情况下的重连风暴
+const RECONNECT_MIN_DELAY = 2000;
+const RECONNECT_AFTER_CLOSE_DELAY = 1000;
+const RECONNECT_MAX_DELAY = 60000;
+
+// 连接相关的句柄不需要响应式，放在 store 外面
+let streamController: AbortController | null = null;
+let pollingTimer: ReturnType<typeof setInterval> | null = null;
+let reconnectTimer: ReturnType<typeof setTimeout> | null = null;
+let reconnectDelay = RECONNECT_MIN_DELAY;
+
 export const useNotificationStore = defineStore('notification', {
     state: () => ({
         unreadCount: 0,
         isPolling: false, // 防止重复轮询
+        isStreaming: false, // 推送连接是否在线
+        resyncVersion: 0, // 每次收到 resync +1，通知列表页据此重新拉取
     }),
     actions: {
         // 1. 从后端获取最新未读数
@@ -32,6 +48,86 @@ export const useNotificationStore = defineStore('notification', {
         // 3. 本地清零 (用于全部已读时)
         clearCount() {
             this.unreadCount = 0;
+        },
+
+        // 4. 登录后打开推送连接 (连接建立时服务端会先推一次当前未读数)
+        connect() {
+            const auth = useAuthStore();
+            if (!auth.isAuthenticated || streamController) return;
+
+            const controller = new AbortController();
+            streamController = controller;
+
+            openNotificationStream(
+                event => {
+                    if (event.type === 'unread') {
+                        this.unreadCount = event.count;
+                    } else {
+                        this.fetchUnreadCount();
+                        this.resyncVersion++;
+                    }
+                },
+                () => {
+                    this.isStreaming = true;
+                    reconnectDelay = RECONNECT_MIN_DELAY;
+                    this.stopPolling();
+                },
+                controller.signal,
+            ).then(
+                // 服务端连接到期正常关闭：直接重连
+                () => this.onStreamClosed(controller, false),
+                error => {
+                    if (error instanceof StreamUnauthorizedError) {
+                        // Token 失效，不再重连，也不轮询
+                        this.disconnect();
+                        return;
+                    }
+                    this.onStreamClosed(controller, true);
+                },
+            );
+        },
+
+        // 5. 登出时关闭连接和所有定时器
+        disconnect() {
+            streamController?.abort();
+            streamController = null;
+            if (reconnectTimer) clearTimeout(reconnectTimer);
+            reconnectTimer = null;
+            reconnectDelay = RECONNECT_MIN_DELAY;
+            this.isStreaming = false;
+            this.stopPolling();
+        },
+
+        onStreamClosed(controller: AbortController, failed: boolean) {
+            // 已被 disconnect() 主动关闭，或已经换了新连接
+            if (streamController !== controller || controller.signal.aborted) return;
+            streamController = null;
+            this.isStreaming = false;
+
+            let delay = RECONNECT_AFTER_CLOSE_DELAY;
+            if (failed) {
+                // 推送断了：先靠轮询兜底，再按退避重连
+                this.startPolling();
+                delay = reconnectDelay;
+                reconnectDelay = Math.min(reconnectDelay * 2, RECONNECT_MAX_DELAY);
+            }
+            reconnectTimer = setTimeout(() => {
+                reconnectTimer = null;
+                this.connect();
+            }, delay);
+        },
+
+        startPolling() {
+            if (this.isPolling) return;
+            this.isPolling = true;
+            this.fetchUnreadCount();
+            pollingTimer = setInterval(() => this.fetchUnreadCount(), FALLBACK_POLL_INTERVAL);
+        },
+
+        stopPolling() {
+            if (pollingTimer) clearInterval(pollingTimer);
+            pollingTimer = null;
+            this.isPolling = false;
         }
     }
-});
\ No newline at end of file
+});
@@ -118,6 +118,12 @@ export interface LocalPluginState {
     installedAt: number;
 }
 
+// 关注流的游标分页：nextCursor 为 null 表示没有更多
+export interface ArticleFeedResponse {
+    articles: Article[];
+    nextCursor: string | null;
+}
+
 export interface MultipleProfilesResponse {
     profiles: Profile[];
     profilesCount: number;
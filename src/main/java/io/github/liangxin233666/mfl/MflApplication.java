@@ -1,6 +1,8 @@
 package io.github.liangxin233666.mfl;
 
+import io.github.liangxin233666.mfl.config.AutoScalerProperties;
 import io.github.liangxin233666.mfl.config.StorageProperties;
+import io.github.liangxin233666.mfl.config.VectorSearchProperties;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -12,7 +14,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableCaching
 @SpringBootApplication
-@EnableConfigurationProperties(StorageProperties.class)
+@EnableConfigurationProperties({StorageProperties.class, AutoScalerProperties.class, VectorSearchProperties.class})
 @EnableAsync
 @EnableRabbit
 @EnableScheduling
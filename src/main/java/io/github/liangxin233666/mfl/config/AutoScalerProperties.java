@@ -0,0 +1,44 @@
+package io.github.liangxin233666.mfl.config;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.Map;
+
+// 映射 app.autoscaler.policies[<监听容器ID>].* ，每个 RabbitMQ 监听容器一套独立的扩缩容策略
+@ConfigurationProperties(prefix = "app.autoscaler")
+@Validated
+public record AutoScalerProperties(
+        Map<String, @Valid Policy> policies
+) {
+
+    /**
+     * PID: 只看积压量；THROUGHPUT: 积压 + 到达率 + 单条耗时 (利特尔法则)
+     */
+    public enum ScalingMode { PID, THROUGHPUT }
+
+    public record Policy(
+            @NotBlank String queue,                               // 用于查询积压的队列名
+            @DefaultValue("THROUGHPUT") ScalingMode mode,
+            @DefaultValue("2") @Min(1) int minConsumers,
+            @DefaultValue("20") @Min(1) int maxConsumers,
+
+            // PID 参数
+            @DefaultValue("0.05") double kp,
+            @DefaultValue("0.005") double ki,
+            @DefaultValue("0.02") double kd,
+
+            // 吞吐模式参数：积压需要在多少秒内清空，以及冗余系数
+            @DefaultValue("60") double targetDrainSeconds,
+            @DefaultValue("1.2") double headroom,
+
+            @DefaultValue("2") int threshold,                     // 变化量小于该值不调整
+            @DefaultValue("100") long emergencyThreshold,         // 积压超过该值无视冷却
+            @DefaultValue("5") long scaleUpCooldownSeconds,       // 扩容快
+            @DefaultValue("60") long scaleDownCooldownSeconds     // 缩容慢
+    ) {}
+}
@@ -0,0 +1,16 @@
+package io.github.liangxin233666.mfl.config;
+
+import com.google.genai.Client;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class GeminiConfig {
+
+    // Client 是线程安全的，全局复用一个
+    @Bean
+    public Client geminiClient(@Value("${gemini.api.key}") String apiKey) {
+        return Client.builder().apiKey(apiKey).build();
+    }
+}
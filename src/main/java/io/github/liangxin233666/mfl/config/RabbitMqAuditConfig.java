@@ -1,5 +1,6 @@
 package io.github.liangxin233666.mfl.config;
 
+import io.github.liangxin233666.mfl.utils.ListenerThroughputRegistry;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
@@ -16,6 +17,7 @@ public class RabbitMqAuditConfig {
     public static final String AUDIT_QUEUE = "article.audit.queue.v2";
     public static final String VECTOR_SAVE_QUEUE = "article.vector.queue";
     public static final String AUDIT_LISTENER_ID = "auditListenerContainer";
+    public static final String VECTOR_LISTENER_ID = "vectorListenerContainer";
 
     // 【新增】死信相关的常量定义
     public static final String DL_EXCHANGE = "audit.dlx";        // 死信交换机
@@ -62,6 +64,14 @@ public class RabbitMqAuditConfig {
     }
 
 
+    /**
+     * 各监听容器的处理耗时统计，供 AuditAutoScaler 按吞吐量扩缩容
+     */
+    @Bean
+    public ListenerThroughputRegistry listenerThroughputRegistry() {
+        return new ListenerThroughputRegistry();
+    }
+
     /**
      * 自定义监听容器工厂
      * 保留了原本的 connectionFactory 和 messageConverter 参数
@@ -69,7 +79,8 @@ public class RabbitMqAuditConfig {
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
             ConnectionFactory connectionFactory,
-            MessageConverter messageConverter
+            MessageConverter messageConverter,
+            ListenerThroughputRegistry throughputRegistry
     ) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
 
@@ -91,7 +102,9 @@ public class RabbitMqAuditConfig {
                 .recoverer(new RejectAndDontRequeueRecoverer()) // 最后失败的处理策略：不重新入队（直接去死信）
                 .build();
 
-        factory.setAdviceChain(retryInterceptor);
+        // 4. 【新增】按容器 ID 挂上计时 Advice (放在最外层，统计的是含重试在内的消费者占用时长)
+        factory.setContainerCustomizer(container -> container.setAdviceChain(
+                throughputRegistry.timingInterceptor(container.getListenerId()), retryInterceptor));
 
         return factory;
     }
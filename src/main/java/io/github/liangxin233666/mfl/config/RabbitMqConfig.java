@@ -1,13 +1,19 @@
 package io.github.liangxin233666.mfl.config;
 
+import io.github.liangxin233666.mfl.utils.ListenerThroughputRegistry;
 import org.springframework.amqp.core.*;
 
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.interceptor.RetryOperationsInterceptor;
 
 
 @Configuration
@@ -16,6 +22,12 @@ public class RabbitMqConfig {
     public static final String QUEUE_NAME = "notification.queue";
     public static final String EXCHANGE_NAME = "notification.exchange";
     public static final String ROUTING_KEY = "notification.routing.key";
+    public static final String NOTIFICATION_LISTENER_ID = "notificationListenerContainer";
+    public static final String NOTIFICATION_BATCH_FACTORY = "notificationBatchContainerFactory";
+    // 每次投递最多攒多少条通知一起入库
+    public static final int NOTIFICATION_BATCH_SIZE = 100;
+    // 重试耗尽的通知批次 (数据库长时间不可用等) 原样转存到这里，恢复后可以人工搬回主队列
+    public static final String DL_QUEUE = "notification.dlq";
 
     // 1. 定义队列 (持久化)
     @Bean
@@ -29,6 +41,12 @@ public class RabbitMqConfig {
         return new DirectExchange(EXCHANGE_NAME);
     }
 
+    // 死信队列：重试耗尽后经默认交换机直接投递 (主队列已声明过，不改它的 arguments)
+    @Bean
+    public Queue notificationDeadLetterQueue() {
+        return new Queue(DL_QUEUE, true);
+    }
+
     // 3. 将队列绑定到交换机
     @Bean
     public Binding binding(Queue queue, DirectExchange exchange) {
@@ -47,4 +65,40 @@ public class RabbitMqConfig {
         rabbitTemplate.setMessageConverter(jsonMessageConverter());
         return rabbitTemplate;
     }
+
+    // 5. 通知专用的批量监听工厂: 一次拿最多 NOTIFICATION_BATCH_SIZE 条，一个事务批量插入，一起 ack
+    @Bean(name = NOTIFICATION_BATCH_FACTORY)
+    public SimpleRabbitListenerContainerFactory notificationBatchContainerFactory(
+            ConnectionFactory connectionFactory,
+            RabbitTemplate rabbitTemplate,
+            ListenerThroughputRegistry throughputRegistry
+    ) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(jsonMessageConverter());
+
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(NOTIFICATION_BATCH_SIZE);
+        factory.setPrefetchCount(NOTIFICATION_BATCH_SIZE); // prefetch 至少要能装下一整批
+        factory.setReceiveTimeout(1000L);                  // 凑不满一批时最多等 1 秒就先处理
+
+        factory.setConcurrentConsumers(2);
+        factory.setMaxConcurrentConsumers(10);
+        // 监听方法只吞掉已知的数据错误；数据库连接断开、死锁等基础设施异常会抛出来：
+        // 整批带退避重试，仍失败则整批转存死信队列，不重新入队，避免毒消息死循环
+        factory.setDefaultRequeueRejected(false);
+
+        RepublishMessageRecoverer republisher = new RepublishMessageRecoverer(rabbitTemplate, "", DL_QUEUE);
+        MessageBatchRecoverer batchRecoverer = (messages, cause) -> messages.forEach(m -> republisher.recover(m, cause));
+        RetryOperationsInterceptor retryInterceptor = RetryInterceptorBuilder.stateless()
+                .maxAttempts(5)
+                .backOffOptions(1000, 2.0, 10000)
+                .recoverer(batchRecoverer)
+                .build();
+
+        factory.setContainerCustomizer(container -> container.setAdviceChain(
+                throughputRegistry.timingInterceptor(container.getListenerId()), retryInterceptor));
+        return factory;
+    }
 }
@@ -5,11 +5,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
 import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.github.liangxin233666.mfl.services.FollowGraphService;
+import io.github.liangxin233666.mfl.services.LocalVectorIndex;
+import io.github.liangxin233666.mfl.services.NotificationStreamService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -71,4 +76,18 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
-}
\ No newline at end of file
+
+    // 跨实例广播：通知推送 (只推给本机持有的 SSE 连接)、关注关系缓存失效
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       NotificationStreamService notificationStreamService,
+                                                                       FollowGraphService followGraphService,
+                                                                       LocalVectorIndex localVectorIndex) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(notificationStreamService, new ChannelTopic(NotificationStreamService.CHANNEL));
+        container.addMessageListener(followGraphService, new ChannelTopic(FollowGraphService.INVALIDATE_CHANNEL));
+        container.addMessageListener(localVectorIndex, new ChannelTopic(LocalVectorIndex.CHANGE_CHANNEL));
+        return container;
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.liangxin233666.mfl.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -60,6 +61,8 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
 
                 .authorizeHttpRequests(auth -> auth
+                        // SSE 结束时的异步分派不带 JWT，原始请求已经鉴权过
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/", "/index.html", "/assets/**", "/static/**", "/*.ico", "/*.js", "/*.css").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/articles/**", "/api/profiles/**","/api/tags").permitAll()
                         .requestMatchers(HttpMethod.POST, "/api/users", "/api/users/login").permitAll()
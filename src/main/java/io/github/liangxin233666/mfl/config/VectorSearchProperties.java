@@ -0,0 +1,61 @@
+package io.github.liangxin233666.mfl.config;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// 映射 app.search.vector.* ：embeddingVector 的 HNSW / 量化参数，以及 kNN 查询的候选数
+// 索引参数只在新建版本索引时生效 (需要走一次重建迁移)，查询参数即时生效
+@ConfigurationProperties(prefix = "app.search.vector")
+@Validated
+public record VectorSearchProperties(
+        @DefaultValue("INT8_HNSW") IndexType indexType,
+        @DefaultValue("16") @Min(2) @Max(512) int m,                     // 每个节点的邻居数
+        @DefaultValue("100") @Min(10) @Max(3200) int efConstruction,     // 建图时的候选队列长度
+
+        // 查询时 numCandidates = clamp(k * numCandidatesFactor, minNumCandidates, MAX_NUM_CANDIDATES)
+        @DefaultValue("4") @DecimalMin("1.0") double numCandidatesFactor,
+        @DefaultValue("50") @Min(1) int minNumCandidates,
+
+        // 进程内精确向量索引：ES 不可用时兜底，正常时对 ES 候选做精确重排
+        @DefaultValue("true") boolean localIndexEnabled,
+        @DefaultValue("2") @Min(1) int rerankOversample,                 // 重排时向 ES 多取的倍数
+
+        // 启动后跑一次 召回率/延迟 基准 (对照 script_score 精确暴力检索)
+        @DefaultValue("false") boolean benchmarkOnStartup,
+        @DefaultValue("50") @Min(1) int benchmarkQueries,
+        @DefaultValue("10") @Min(1) int benchmarkK,
+        @DefaultValue({"1", "2", "4", "8", "16"}) List<Double> benchmarkFactors
+) {
+
+    // ES 对 num_candidates 的硬上限
+    public static final int MAX_NUM_CANDIDATES = 10_000;
+
+    /**
+     * 向量索引类型：INT8 / INT4 为标量量化 (内存约 1/4、1/8)，BBQ 为二值量化 (约 1/32，需 ES 8.16+)
+     */
+    public enum IndexType { HNSW, INT8_HNSW, INT4_HNSW, BBQ_HNSW }
+
+    public int numCandidates(int k) {
+        int candidates = Math.max(minNumCandidates, (int) Math.ceil(k * numCandidatesFactor));
+        return Math.min(Math.max(candidates, k), MAX_NUM_CANDIDATES);
+    }
+
+    /**
+     * dense_vector 的 index_options
+     */
+    public Map<String, Object> indexOptions() {
+        return Map.of(
+                "type", indexType.name().toLowerCase(Locale.ROOT),
+                "m", m,
+                "ef_construction", efConstruction
+        );
+    }
+}
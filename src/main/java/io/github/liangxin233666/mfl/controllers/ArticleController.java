@@ -1,5 +1,6 @@
 package io.github.liangxin233666.mfl.controllers;
 
+import io.github.liangxin233666.mfl.dtos.ArticleFeedResponse;
 import io.github.liangxin233666.mfl.dtos.ArticleResponse;
 import io.github.liangxin233666.mfl.dtos.MultipleArticlesResponse;
 import io.github.liangxin233666.mfl.dtos.NewArticleRequest;
@@ -91,11 +92,17 @@ public class ArticleController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 关注作者的文章流，游标分页
+     * GET /api/articles/feed?limit=20            第一页
+     * GET /api/articles/feed?cursor=...&limit=20 下一页 (cursor 取上一页返回的 nextCursor)
+     */
     @GetMapping("/feed")
-    public ResponseEntity<MultipleArticlesResponse> getFeedArticles(
-            @PageableDefault(size = 20) Pageable pageable,
+    public ResponseEntity<ArticleFeedResponse> getFeedArticles(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
             @AuthenticationPrincipal UserDetails currentUser) {
-        MultipleArticlesResponse response = articleService.getFeedArticles(pageable, currentUser);
+        ArticleFeedResponse response = articleService.getFeedArticles(cursor, limit, currentUser);
         return ResponseEntity.ok(response);
     }
     @GetMapping("/recommend")
@@ -2,13 +2,16 @@ package io.github.liangxin233666.mfl.controllers;
 
 import io.github.liangxin233666.mfl.dtos.MultipleNotificationsResponse;
 import io.github.liangxin233666.mfl.services.NotificationService;
+import io.github.liangxin233666.mfl.services.NotificationStreamService;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Map;
 
@@ -17,9 +20,11 @@ import java.util.Map;
 public class NotificationController {
 
     private final NotificationService notificationService;
+    private final NotificationStreamService notificationStreamService;
 
-    public NotificationController(NotificationService notificationService) {
+    public NotificationController(NotificationService notificationService, NotificationStreamService notificationStreamService) {
         this.notificationService = notificationService;
+        this.notificationStreamService = notificationStreamService;
     }
 
     /**
@@ -45,6 +50,17 @@ public class NotificationController {
         return ResponseEntity.ok(Map.of("count", count));
     }
 
+    /**
+     * 未读数实时推送 (SSE)，替代对 /count 的轮询
+     * 连接建立后立即收到一次 unread 事件，之后每次未读数变化都会推送；收到 resync 时重新拉取列表
+     * 鉴权与其他接口相同 (Authorization 头)：浏览器端用 fetch + ReadableStream 读取，EventSource 不能带请求头
+     * GET /api/notifications/stream
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@AuthenticationPrincipal UserDetails currentUser) {
+        return notificationStreamService.subscribe(Long.valueOf(currentUser.getUsername()));
+    }
+
     /**
      * 标记某一条通知为已读 (用户点击该通知时调用)
      * PUT /api/notifications/{id}/read
@@ -26,12 +26,14 @@ public class SearchController {
      * 智能搜索文章接口
      *
      * @param query 搜索关键词（支持模糊匹配标题、正文、AI隐式标签）
+     * @param sort 排序方式：relevance (默认，纯文本相关度) / popular (相关度 × 点赞热度 × 时间衰减)
      * @param pageable 分页参数，默认20条，Spring 自动处理 ?page=0&size=20
      * @param currentUser 当前登录用户（可选），用于展示“是否点赞”等个性化状态
      */
     @GetMapping
     public ResponseEntity<MultipleArticlesResponse> search(
             @RequestParam("query") String query,
+            @RequestParam(value = "sort", defaultValue = "relevance") String sort,
             @PageableDefault(size = 20) Pageable pageable,
             @AuthenticationPrincipal UserDetails currentUser) {
 
@@ -44,7 +46,7 @@ public class SearchController {
             return ResponseEntity.ok(new MultipleArticlesResponse(java.util.Collections.emptyList(), 0));
         }
 
-        MultipleArticlesResponse response = articleService.searchArticles(query, pageable, currentUser);
+        MultipleArticlesResponse response = articleService.searchArticles(query, "popular".equalsIgnoreCase(sort), pageable, currentUser);
         return ResponseEntity.ok(response);
     }
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package io.github.liangxin233666.mfl.dtos;
+
+import java.util.List;
+
+/**
+ * 游标分页的文章列表：不返回总数，nextCursor 为 null 表示没有更多
+ */
+public record ArticleFeedResponse(
+        List<ArticleResponse.ArticleDto> articles,
+        String nextCursor
+) {}
@@ -2,9 +2,25 @@ package io.github.liangxin233666.mfl.dtos; // 放到适合的包
 
 import io.github.liangxin233666.mfl.services.gemini.GeminiService;
 import java.io.Serializable;
+import java.util.List;
 
 // 必须实现 Serializable，或者使用 Jackson 序列化配置
 public record AuditPassedEvent(
         Long articleId,
-        GeminiService.AnalysisResult analysisResult // 携带已经生成的审核结果
-) implements Serializable {}
\ No newline at end of file
+        GeminiService.AnalysisResult analysisResult, // 携带已经生成的审核结果
+        boolean backfill // true: 已发布文章只补向量 (索引重建)，不改状态、不发通知、不推时间线
+) implements Serializable {
+
+    public AuditPassedEvent(Long articleId, GeminiService.AnalysisResult analysisResult) {
+        this(articleId, analysisResult, false);
+    }
+
+    /**
+     * 索引重建时给缺向量的已发布文章补向量，关键词沿用旧索引里保存的 aiKeywords
+     */
+    public static AuditPassedEvent backfill(Long articleId, List<String> aiKeywords) {
+        return new AuditPassedEvent(articleId,
+                new GeminiService.AnalysisResult(true, aiKeywords == null ? List.of() : aiKeywords, null),
+                true);
+    }
+}
\ No newline at end of file
@@ -11,7 +11,9 @@ public record NotificationResponse(
         ResourceDto resource,       // 相关资源的简要信息
         boolean isRead,
         OffsetDateTime createdAt,
-        String payload
+        String payload,
+        int count,                  // 聚合通知合并的事件数，普通通知为 1
+        List<ActorDto> recentActors // 聚合通知最近的几个触发者，普通通知为空
 ) {
     public record ActorDto(String username, String image) {}
     public record ResourceDto(Long id, String slug) {}
@@ -68,7 +68,8 @@ public class Article {
     )
     private List<Comment> comments = new ArrayList<>();
 
-    @Column(nullable = false)
+    // 只通过 ArticleRepository.adjustFavoritesCount 原子增减；实体保存时不写这一列，避免用旧值覆盖并发点赞
+    @Column(nullable = false, updatable = false)
     private int favoritesCount = 0;
 
     @Column(length = 2048)
@@ -5,6 +5,8 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.OffsetDateTime;
 
@@ -44,4 +46,16 @@ public class Notification {
 
     @Column(nullable = false)
     private String content;
+
+    // --- 聚合 (目前只有 ARTICLE_LIKED)：同一窗口内的重复事件合并成一行，aggregateCount 为不同触发者的人数 ---
+
+    @Column(nullable = false)
+    private int aggregateCount = 1;
+
+    private Long aggregateWindow;
+
+    // 最近的几个触发者 ID，最新的在前
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(columnDefinition = "BIGINT[]")
+    private Long[] recentActorIds;
 }
\ No newline at end of file
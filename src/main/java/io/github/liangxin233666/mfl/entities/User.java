@@ -54,7 +54,8 @@ public class User {
     //用 Hibernate.size()
     private Set<User> followers = new HashSet<>();
 
-    @Column(columnDefinition = "TEXT")
-    private String embeddingVector;
+    // 小端 float32 原始字节，读写统一走 EmbeddingCodec
+    @Column(columnDefinition = "BYTEA")
+    private byte[] embeddingVector;
 
 }
\ No newline at end of file
@@ -2,6 +2,8 @@
 package io.github.liangxin233666.mfl.entities.es;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.github.liangxin233666.mfl.entities.Article;
+import io.github.liangxin233666.mfl.entities.Tag;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -18,8 +20,13 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 @JsonIgnoreProperties(ignoreUnknown = true)
-@Document(indexName = "articles")
+@Document(indexName = ArticleDocument.READ_ALIAS, createIndex = false)
 public class ArticleDocument {
+
+    // 读写都走别名，具体索引由 ArticleIndexManager 管理
+    public static final String READ_ALIAS = "articles-read";
+    public static final String WRITE_ALIAS = "articles-write";
+
     @Id
     private Long id;
 
@@ -60,4 +67,22 @@ public class ArticleDocument {
     @Field(type = FieldType.Long)
     private Long favoritesCount;
 
+    /**
+     * 由文章实体构建 ES 文档 (需已加载 tags 与 author)；aiKeywords 与向量来自审核结果或旧索引
+     */
+    public static ArticleDocument of(Article article, List<String> aiKeywords, float[] embeddingVector) {
+        return ArticleDocument.builder()
+                .id(article.getId())
+                .slug(article.getSlug())
+                .title(article.getTitle())
+                .description(article.getDescription())
+                .aiKeywords(aiKeywords)
+                .embeddingVector(embeddingVector)
+                .originalTags(article.getTags().stream().map(Tag::getName).toList())
+                .authorName(article.getAuthor().getUsername())
+                .createdAt(article.getCreatedAt())
+                .favoritesCount((long) article.getFavoritesCount())
+                .build();
+    }
+
 }
\ No newline at end of file
@@ -3,15 +3,19 @@ package io.github.liangxin233666.mfl.repositories;
 import io.github.liangxin233666.mfl.entities.Article;
 import io.github.liangxin233666.mfl.entities.User;
 import io.github.liangxin233666.mfl.repositories.projections.ArticleSimpleView;
+import io.github.liangxin233666.mfl.repositories.projections.FeedEntryView;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -31,9 +35,27 @@ public interface ArticleRepository extends JpaRepository<Article, Long> , JpaSpe
     @Query("SELECT a FROM Article a LEFT JOIN FETCH a.tags LEFT JOIN FETCH a.author WHERE a.id = :id")
     Optional<Article> findByIdWithTagsAndAuthor(@Param("id") Long id);
 
+    // 只要 id，走 slug 唯一索引，不加载实体
+    @Query("SELECT a.id FROM Article a WHERE a.slug = :slug")
+    Optional<Long> findIdBySlug(@Param("slug") String slug);
+
     @Query("SELECT a.id as id, a.favoritesCount as favoritesCount FROM Article a WHERE a.status = :status")
     List<ArticleSimpleView> findTopHotArticles(Article.ArticleStatus status, Pageable pageable);
 
+    // 全网趋势聚类的样本：最近一段时间内发布的热门文章，只查 id + 点赞数
+    @Query("SELECT a.id as id, a.favoritesCount as favoritesCount FROM Article a WHERE a.status = :status AND a.createdAt >= :since")
+    List<ArticleSimpleView> findHotArticlesSince(@Param("status") Article.ArticleStatus status,
+                                                 @Param("since") OffsetDateTime since,
+                                                 Pageable pageable);
+
+    // 冷启动首页的"最新"榜：只查 id，走 idx_articles_latest_public (status, created_at DESC)
+    @Query("SELECT a.id FROM Article a WHERE a.status = :status ORDER BY a.createdAt DESC")
+    List<Long> findLatestIdsByStatus(@Param("status") Article.ArticleStatus status, Limit limit);
+
+    // 同步点赞数到 ES 用：只查 id + 计数
+    @Query("SELECT a.id as id, a.favoritesCount as favoritesCount FROM Article a WHERE a.id IN :ids")
+    List<ArticleSimpleView> findFavoriteCountsByIdIn(@Param("ids") Collection<Long> ids);
+
     // -----------------------------------------------------------
     // 1. [搜索优化] 只有 id 在 list 里，且返回的是 Projection
     // -----------------------------------------------------------
@@ -41,14 +63,35 @@ public interface ArticleRepository extends JpaRepository<Article, Long> , JpaSpe
 
 
     // -----------------------------------------------------------
-    // 2. [Feed流优化] 查找关注的人的文章，返回 Projection
+    // 2. [Feed流优化] 关注作者的文章，按 (created_at, id) 游标翻页
     // -----------------------------------------------------------
-    // 只要返回类型写成 ArticleSimpleView (或 Page<ArticleSimpleView>)，Hibernate 就知道只查这几个字段
-    Page<ArticleSimpleView> findByAuthorInAndStatusOrderByCreatedAtDesc(
-            Collection<User> authors,
-            Article.ArticleStatus status,
-            Pageable pageable
-    );
+    // 只查排序键，走 idx_articles_feed_perf (author_id, status, created_at DESC)；不做 OFFSET，也没有 COUNT
+    // created_at <= :createdAt 是冗余条件，让索引能直接用上范围扫描，OR 部分只负责同一时刻的 id 决胜
+    @Query("SELECT a.id AS id, a.createdAt AS createdAt FROM Article a WHERE a.author.id IN :authorIds AND a.status = :status " +
+            "AND a.createdAt <= :createdAt AND (a.createdAt < :createdAt OR a.id < :id) " +
+            "ORDER BY a.createdAt DESC, a.id DESC")
+    List<FeedEntryView> findFeedEntriesBefore(@Param("authorIds") Collection<Long> authorIds,
+                                              @Param("status") Article.ArticleStatus status,
+                                              @Param("createdAt") OffsetDateTime createdAt,
+                                              @Param("id") Long id,
+                                              Limit limit);
+
+
+    // -----------------------------------------------------------
+    // [ES 重建索引] 按主键游标分块扫描，不用 OFFSET
+    // -----------------------------------------------------------
+    @Query("SELECT a.id FROM Article a WHERE a.status = :status AND a.id > :afterId ORDER BY a.id")
+    List<Long> findIdsByStatusAfter(@Param("status") Article.ArticleStatus status,
+                                    @Param("afterId") Long afterId,
+                                    Limit limit);
+
+    // 追平重建期间新发布/修改的文章
+    @Query("SELECT a.id FROM Article a WHERE a.status = :status AND a.updatedAt >= :since ORDER BY a.id")
+    List<Long> findIdsByStatusUpdatedSince(@Param("status") Article.ArticleStatus status,
+                                           @Param("since") OffsetDateTime since);
+
+    @Query("SELECT DISTINCT a FROM Article a LEFT JOIN FETCH a.tags LEFT JOIN FETCH a.author WHERE a.id IN :ids")
+    List<Article> findAllWithTagsAndAuthorByIdIn(@Param("ids") Collection<Long> ids);
 
 
     // -----------------------------------------------------------
@@ -58,4 +101,21 @@ public interface ArticleRepository extends JpaRepository<Article, Long> , JpaSpe
     // 直接查关联表。
     @Query(value = "SELECT article_id FROM article_favorites WHERE user_id = :userId AND article_id IN :articleIds", nativeQuery = true)
     Set<Long> findLikedArticleIds(@Param("userId") Long userId, @Param("articleIds") List<Long> articleIds);
+
+    // -----------------------------------------------------------
+    // 4. [点赞计数] 直接写关联表 + 原子增减计数，不加载 favoritedBy 集合
+    // -----------------------------------------------------------
+    // 返回影响行数：0 表示已经点过赞 / 本来就没点赞，调用方据此决定是否调整计数
+    @Modifying
+    @Query(value = "INSERT INTO article_favorites (user_id, article_id) VALUES (:userId, :articleId) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertFavorite(@Param("userId") Long userId, @Param("articleId") Long articleId);
+
+    @Modifying
+    @Query(value = "DELETE FROM article_favorites WHERE user_id = :userId AND article_id = :articleId", nativeQuery = true)
+    int deleteFavorite(@Param("userId") Long userId, @Param("articleId") Long articleId);
+
+    // 在数据库里做加减，并发点赞不会互相覆盖；clearAutomatically 让持久化上下文里的旧值失效
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Article a SET a.favoritesCount = GREATEST(a.favoritesCount + :delta, 0) WHERE a.id = :id")
+    int adjustFavoritesCount(@Param("id") Long id, @Param("delta") int delta);
 }
@@ -1,6 +1,7 @@
 package io.github.liangxin233666.mfl.repositories;
 
 import io.github.liangxin233666.mfl.entities.Notification;
+import io.github.liangxin233666.mfl.repositories.projections.UnreadCountView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -8,6 +9,9 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
 
     // 标准查询：获取列表
@@ -16,7 +20,17 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     // 标准统计：获取未读数 (JPA会自动生成 SELECT COUNT(*)...)
     long countByTargetUserIdAndIsReadFalse(Long userId);
 
+    // 对账用：一次查出一批用户的未读数 (没有未读的用户不会出现在结果里)
+    @Query("SELECT n.targetUser.id AS userId, COUNT(n) AS unread FROM Notification n " +
+            "WHERE n.targetUser.id IN :userIds AND n.isRead = false GROUP BY n.targetUser.id")
+    List<UnreadCountView> countUnreadByTargetUserIds(@Param("userIds") Collection<Long> userIds);
+
+    // 只把仍未读的那一行翻成已读，返回 1 表示这次确实消掉了一条未读
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Notification n SET n.isRead = true WHERE n.id = :id AND n.isRead = false")
+    int markAsRead(@Param("id") Long id);
+
     @Modifying(clearAutomatically = true)
     @Query("UPDATE Notification n SET n.isRead = true WHERE n.targetUser.id = :userId AND n.isRead = false")
-    void markAllAsRead(@Param("userId") Long userId);
+    int markAllAsRead(@Param("userId") Long userId);
 }
\ No newline at end of file
@@ -1,14 +1,17 @@
 package io.github.liangxin233666.mfl.repositories;
 
 import io.github.liangxin233666.mfl.entities.User;
+import io.github.liangxin233666.mfl.repositories.projections.UserEmbeddingView;
 import io.github.liangxin233666.mfl.repositories.projections.UserSimpleView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -34,4 +37,37 @@ public interface UserRepository extends JpaRepository<User, Long> {
     // 直接查关联表 user_follows，避免加载 Entity
     @Query(value = "SELECT followed_id FROM user_follows WHERE follower_id = :currentUserId AND followed_id IN :targetIds", nativeQuery = true)
     Set<Long> checkFollowingStatus(@Param("currentUserId") Long currentUserId, @Param("targetIds") List<Long> targetIds);
-}
\ No newline at end of file
+
+    // 关注的作者 ID (只查关联表，不加载 User 实体)
+    @Query(value = "SELECT followed_id FROM user_follows WHERE follower_id = :userId", nativeQuery = true)
+    List<Long> findFollowedIds(@Param("userId") Long userId);
+
+    // 直接写关联表，不加载 following 集合；返回影响行数，0 表示已关注 / 本来就没关注
+    @Modifying
+    @Query(value = "INSERT INTO user_follows (follower_id, followed_id) VALUES (:followerId, :followedId) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertFollow(@Param("followerId") Long followerId, @Param("followedId") Long followedId);
+
+    @Modifying
+    @Query(value = "DELETE FROM user_follows WHERE follower_id = :followerId AND followed_id = :followedId", nativeQuery = true)
+    int deleteFollow(@Param("followerId") Long followerId, @Param("followedId") Long followedId);
+
+    // 粉丝 ID / 粉丝数 (走 user_follows(followed_id) 索引)，用于发布时的时间线推送
+    @Query(value = "SELECT follower_id FROM user_follows WHERE followed_id = :userId", nativeQuery = true)
+    List<Long> findFollowerIds(@Param("userId") Long userId);
+
+    @Query(value = "SELECT COUNT(*) FROM user_follows WHERE followed_id = :userId", nativeQuery = true)
+    long countFollowers(@Param("userId") Long userId);
+
+    // 4. 批量读取兴趣向量 (只查 id + embedding_vector 两列)
+    @Query("SELECT u.id as id, u.embeddingVector as embeddingVector FROM User u WHERE u.id IN :ids")
+    List<UserEmbeddingView> findEmbeddingsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // 5. 只更新兴趣向量这一列，避免整行 save 覆盖掉并发的资料修改
+    @Modifying
+    @Query("UPDATE User u SET u.embeddingVector = :embedding WHERE u.id = :id")
+    int updateEmbeddingVector(@Param("id") Long id, @Param("embedding") byte[] embedding);
+
+    // 6. 批量检查哪些用户仍然存在 (批量写通知前过滤已注销用户)
+    @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+    Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+}
@@ -31,5 +31,50 @@ public interface EsArticleRepository extends ElasticsearchRepository<ArticleDocu
     """)
     Page<ArticleDocument> searchIdeally(String keyword, Pageable pageable);
 
+    // 热度模式：文本相关度 × log(点赞数) × 时间衰减
+    // log2p = log10(2 + favoritesCount)，0 赞时约 0.3 而不是 0，不会把新文章直接乘没；
+    // exp: 3 天内不衰减，之后每 30 天分数减半 (指数衰减才是固定半衰期；gauss 会在 30 天后按距离平方陡降)
+    @Query("""
+        {
+          "function_score": {
+            "query": {
+              "multi_match": {
+                "query": "?0",
+                "fields": [
+                  "title^3",
+                  "aiKeywords^2",
+                  "originalTags^2",
+                  "authorName",
+                  "description"
+                ],
+                "type": "best_fields"
+              }
+            },
+            "functions": [
+              {
+                "field_value_factor": {
+                  "field": "favoritesCount",
+                  "modifier": "log2p",
+                  "missing": 0
+                }
+              },
+              {
+                "exp": {
+                  "createdAt": {
+                    "origin": "now",
+                    "offset": "3d",
+                    "scale": "30d",
+                    "decay": 0.5
+                  }
+                }
+              }
+            ],
+            "score_mode": "multiply",
+            "boost_mode": "multiply"
+          }
+        }
+    """)
+    Page<ArticleDocument> searchByPopularity(String keyword, Pageable pageable);
+
     ArticleDocument findBySlug(String slug);
 }
\ No newline at end of file
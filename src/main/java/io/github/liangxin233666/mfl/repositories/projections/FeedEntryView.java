@@ -0,0 +1,11 @@
+package io.github.liangxin233666.mfl.repositories.projections;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Feed 排序键：只有 id + 发布时间，用于游标翻页和时间线合并
+ */
+public interface FeedEntryView {
+    Long getId();
+    OffsetDateTime getCreatedAt();
+}
@@ -0,0 +1,9 @@
+package io.github.liangxin233666.mfl.repositories.projections;
+
+/**
+ * 按用户分组的未读数，用于 Redis 未读计数器的批量对账
+ */
+public interface UnreadCountView {
+    Long getUserId();
+    long getUnread();
+}
@@ -0,0 +1,9 @@
+package io.github.liangxin233666.mfl.repositories.projections;
+
+/**
+ * 只查兴趣向量，用于批量刷写，不加载整行 User
+ */
+public interface UserEmbeddingView {
+    Long getId();
+    byte[] getEmbeddingVector();
+}
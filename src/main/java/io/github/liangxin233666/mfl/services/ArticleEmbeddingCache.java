@@ -0,0 +1,98 @@
+package io.github.liangxin233666.mfl.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
+import io.github.liangxin233666.mfl.repositories.es.EsArticleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 文章向量本地缓存：articleId -> float[]
+ * 文章发布后向量不再变化，热门文章一小时被读几千次，没必要每次都走 ES 拉整篇文档。
+ * 按字节数限容 (768 维 ≈ 3KB/条)，发布时预热，删除时失效。
+ */
+@Slf4j
+@Service
+public class ArticleEmbeddingCache {
+
+    private final EsArticleRepository esArticleRepository;
+
+    // 64MB 约可容纳 2 万篇文章的向量
+    private static final long MAX_WEIGHT_BYTES = 64L * 1024 * 1024;
+    // 每条额外开销估算 (key + 数组头 + 节点)
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final Cache<Long, float[]> cache;
+
+    public ArticleEmbeddingCache(EsArticleRepository esArticleRepository) {
+        this.esArticleRepository = esArticleRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(MAX_WEIGHT_BYTES)
+                .weigher((Long id, float[] vector) -> vector.length * Float.BYTES + ENTRY_OVERHEAD_BYTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 单个读取，未命中则回源 ES；文章不存在或没有向量时返回 null
+     */
+    public float[] get(Long articleId) {
+        if (articleId == null) return null;
+        return cache.get(articleId, id -> esArticleRepository.findById(id)
+                .map(ArticleDocument::getEmbeddingVector)
+                .orElse(null));
+    }
+
+    /**
+     * 批量读取，所有未命中的 ID 合并成一次 ES mget；没有向量的 ID 不会出现在结果里
+     */
+    public Map<Long, float[]> getAll(Collection<Long> articleIds) {
+        if (articleIds == null || articleIds.isEmpty()) return Map.of();
+        return cache.getAll(articleIds, missing -> {
+            Map<Long, float[]> loaded = new HashMap<>();
+            for (ArticleDocument doc : esArticleRepository.findAllById(new ArrayList<Long>(missing))) {
+                if (doc != null && doc.getEmbeddingVector() != null) {
+                    loaded.put(doc.getId(), doc.getEmbeddingVector());
+                }
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * 发布时直接写入，首批读者不用回源
+     */
+    public void put(Long articleId, float[] vector) {
+        if (articleId == null || vector == null) return;
+        cache.put(articleId, vector);
+    }
+
+    public void invalidate(Long articleId) {
+        if (articleId == null) return;
+        cache.invalidate(articleId);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 每 10 分钟打印一次命中率 / 淘汰数，便于评估容量是否合适
+     */
+    @Scheduled(fixedRate = 600000)
+    public void logStats() {
+        CacheStats stats = cache.stats();
+        log.info("【向量缓存】条目: {} | 命中: {} | 未命中: {} | 命中率: {} | 淘汰: {} | 回源耗时均值: {}ms",
+                cache.estimatedSize(), stats.hitCount(), stats.missCount(),
+                String.format("%.2f%%", stats.hitRate() * 100), stats.evictionCount(),
+                String.format("%.1f", stats.averageLoadPenalty() / 1_000_000.0));
+    }
+}
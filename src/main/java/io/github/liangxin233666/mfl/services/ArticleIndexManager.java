@@ -0,0 +1,252 @@
+package io.github.liangxin233666.mfl.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import io.github.liangxin233666.mfl.config.VectorSearchProperties;
+import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * 文章索引的别名管理
+ * 应用从不直接读写某个具体索引：查询走读别名 articles-read，写入走写别名 articles-write，
+ * 具体索引名带版本时间戳 (articles_yyyyMMddHHmmss)。改分词器或向量参数时新建一个版本，
+ * 迁移期间由迁移别名 articles-migrating 标记新索引，所有实例的写入同时落到新旧两边 (双写)，
+ * 数据灌完后在一次 update_aliases 请求里把读写别名一起切过去，查询不会看到空窗。
+ *
+ * 迁移别名存在 ES 里而不是本机内存，其他实例每 5 秒探测一次；这几秒内漏掉的写入由重建任务按 updated_at 追平。
+ */
+@Slf4j
+@Service
+public class ArticleIndexManager {
+
+    public static final String READ_ALIAS = ArticleDocument.READ_ALIAS;
+    public static final String WRITE_ALIAS = ArticleDocument.WRITE_ALIAS;
+    public static final String MIGRATION_ALIAS = "articles-migrating";
+    // 引入别名之前的索引名 (Spring Data 自动建的实体索引，或早期重建任务建的别名)
+    private static final String LEGACY_NAME = "articles";
+    private static final String INDEX_PREFIX = "articles_";
+    private static final DateTimeFormatter INDEX_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final String VECTOR_FIELD = "embeddingVector";
+    // 各实例探测迁移别名的间隔
+    private static final long REFRESH_INTERVAL_MILLIS = 5000;
+    // 放弃迁移时，摘掉迁移别名后等这么久再删索引：两个探测周期，外加正在进行的 bulk 请求 (含退避重试) 的余量
+    private static final long ABORT_DRAIN_MILLIS = 2 * REFRESH_INTERVAL_MILLIS + 5000;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ElasticsearchClient esClient;
+    private final VectorSearchProperties vectorSearchProperties;
+
+    private volatile boolean bootstrapped = false;
+    // 迁移中的新索引，没有迁移时为 null
+    private volatile String migrationIndex;
+
+    public ArticleIndexManager(ElasticsearchOperations elasticsearchOperations, ElasticsearchClient esClient,
+                               VectorSearchProperties vectorSearchProperties) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.esClient = esClient;
+        this.vectorSearchProperties = vectorSearchProperties;
+    }
+
+    /**
+     * 启动时确保读写别名存在；ES 暂不可用时不阻塞启动，由定时任务补做
+     */
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelay = REFRESH_INTERVAL_MILLIS, initialDelay = REFRESH_INTERVAL_MILLIS)
+    public void refresh() {
+        try {
+            if (!bootstrapped) {
+                ensureAliases();
+                bootstrapped = true;
+            }
+            Set<String> migrating = indicesOf(MIGRATION_ALIAS);
+            String current = migrating.isEmpty() ? null : migrating.iterator().next();
+            if (!Objects.equals(current, migrationIndex)) {
+                log.info("【索引别名】双写目标变更: {} -> {}", migrationIndex, current);
+                migrationIndex = current;
+            }
+        } catch (Exception e) {
+            log.warn("【索引别名】刷新别名状态失败，保持当前状态: {}", e.getMessage());
+        }
+    }
+
+    // ==========================================
+    // 写入目标
+    // ==========================================
+
+    /**
+     * 当前所有写入目标：写别名，迁移期间再加上新索引
+     */
+    public List<String> writeIndices() {
+        // 别名还没建好时写别名会被 ES 自动建成一个动态 mapping 的同名索引，宁可让调用方重试
+        if (!bootstrapped) {
+            throw new IllegalStateException("Article index aliases are not initialized yet");
+        }
+        String migrating = migrationIndex;
+        return migrating == null ? List.of(WRITE_ALIAS) : List.of(WRITE_ALIAS, migrating);
+    }
+
+    public void delete(Long articleId) {
+        for (String index : writeIndices()) {
+            elasticsearchOperations.delete(String.valueOf(articleId), IndexCoordinates.of(index));
+        }
+    }
+
+    // ==========================================
+    // 版本化索引与迁移
+    // ==========================================
+
+    /**
+     * 按 ArticleDocument 当前的注解 (分词器等) 新建一个版本索引，向量字段的 HNSW / 量化参数取自配置
+     */
+    public String createVersionedIndex() {
+        String index = INDEX_PREFIX + LocalDateTime.now().format(INDEX_SUFFIX);
+        IndexOperations template = elasticsearchOperations.indexOps(ArticleDocument.class);
+        Document mapping = template.createMapping();
+        applyVectorIndexOptions(mapping);
+        elasticsearchOperations.indexOps(IndexCoordinates.of(index)).create(template.createSettings(), mapping);
+        log.info("【索引别名】已创建索引 {}，向量参数: {}", index, vectorSearchProperties.indexOptions());
+        return index;
+    }
+
+    /**
+     * 开始迁移：挂上迁移别名，本机立即开始双写，其他实例在下一次 refresh 时跟上
+     */
+    public void beginMigration(String newIndex) throws IOException {
+        Set<String> migrating = indicesOf(MIGRATION_ALIAS);
+        if (!migrating.isEmpty()) {
+            throw new IllegalStateException("Another migration is in progress: " + migrating);
+        }
+        esClient.indices().updateAliases(u -> u.actions(a -> a.add(ad -> ad.index(newIndex).alias(MIGRATION_ALIAS))));
+        migrationIndex = newIndex;
+        log.info("【索引别名】开始迁移到 {}，双写已开启", newIndex);
+    }
+
+    /**
+     * 原子切换：读写别名从旧索引摘下、挂到新索引，同时摘掉迁移别名。旧索引保留，便于回滚
+     */
+    public void completeMigration(String newIndex) throws IOException {
+        List<Action> actions = new ArrayList<>();
+        for (String alias : List.of(READ_ALIAS, WRITE_ALIAS)) {
+            for (String oldIndex : indicesOf(alias)) {
+                if (!oldIndex.equals(newIndex)) {
+                    actions.add(Action.of(a -> a.remove(r -> r.index(oldIndex).alias(alias))));
+                }
+            }
+        }
+        actions.add(Action.of(a -> a.add(ad -> ad.index(newIndex).alias(READ_ALIAS))));
+        actions.add(Action.of(a -> a.add(ad -> ad.index(newIndex).alias(WRITE_ALIAS).isWriteIndex(true))));
+        actions.add(Action.of(a -> a.remove(r -> r.index(newIndex).alias(MIGRATION_ALIAS))));
+
+        esClient.indices().updateAliases(u -> u.actions(actions));
+        migrationIndex = null;
+        log.info("【索引别名】读写别名已切换到 {}", newIndex);
+    }
+
+    /**
+     * 放弃迁移：停止双写并删除半成品索引，读写别名不受影响
+     * 其他实例还会按缓存的索引名继续写最多一个探测周期；这时删掉索引，bulk index 会让 ES 按动态 mapping
+     * 自动重建一个同名索引 (向量变成普通 float 数组、没有分词器)。所以先摘迁移别名，等所有实例都停写后再删。
+     * 会阻塞调用线程 ABORT_DRAIN_MILLIS，只在重建任务的线程上调用。
+     */
+    public void abortMigration(String newIndex) {
+        boolean aliased;
+        try {
+            // 还没挂上迁移别名 (beginMigration 之前就失败了) 时没有实例在写它，可以直接删
+            aliased = indicesOf(MIGRATION_ALIAS).contains(newIndex);
+            if (aliased) {
+                esClient.indices().updateAliases(u -> u.actions(a -> a.remove(r -> r.index(newIndex).alias(MIGRATION_ALIAS))));
+            }
+        } catch (Exception e) {
+            // 别名摘不掉时其他实例会继续双写，不能删索引，留给人工处理
+            log.error("【索引别名】摘除迁移别名失败，保留索引 {}，请手动清理", newIndex, e);
+            return;
+        }
+        migrationIndex = null;
+
+        if (aliased) {
+            log.warn("【索引别名】迁移已放弃，{} ms 后删除索引 {}", ABORT_DRAIN_MILLIS, newIndex);
+            try {
+                Thread.sleep(ABORT_DRAIN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("【索引别名】等待停写时被中断，保留索引 {}，请手动清理", newIndex);
+                return;
+            }
+        }
+        try {
+            elasticsearchOperations.indexOps(IndexCoordinates.of(newIndex)).delete();
+            log.warn("【索引别名】索引 {} 已删除", newIndex);
+        } catch (Exception e) {
+            log.error("【索引别名】删除未完成的索引 {} 失败，请手动清理", newIndex, e);
+        }
+    }
+
+    // ==========================================
+    // 内部
+    // ==========================================
+
+    /**
+     * 读写别名缺失时补齐：优先挂到已有的索引 (升级前的 articles)，都没有才新建
+     */
+    private void ensureAliases() throws IOException {
+        Set<String> readIndices = indicesOf(READ_ALIAS);
+        Set<String> writeIndices = indicesOf(WRITE_ALIAS);
+        if (!readIndices.isEmpty() && !writeIndices.isEmpty()) return;
+
+        List<Action> actions = new ArrayList<>();
+        String target;
+        if (!readIndices.isEmpty()) {
+            target = readIndices.iterator().next();
+        } else if (!writeIndices.isEmpty()) {
+            target = writeIndices.iterator().next();
+        } else if (esClient.indices().exists(e -> e.index(LEGACY_NAME)).value()) {
+            boolean legacyIsAlias = esClient.indices().existsAlias(e -> e.name(LEGACY_NAME)).value();
+            target = legacyIsAlias ? indicesOf(LEGACY_NAME).iterator().next() : LEGACY_NAME;
+            if (legacyIsAlias) {
+                actions.add(Action.of(a -> a.remove(r -> r.index(target).alias(LEGACY_NAME))));
+            }
+        } else {
+            target = createVersionedIndex();
+        }
+
+        if (readIndices.isEmpty()) {
+            actions.add(Action.of(a -> a.add(ad -> ad.index(target).alias(READ_ALIAS))));
+        }
+        if (writeIndices.isEmpty()) {
+            actions.add(Action.of(a -> a.add(ad -> ad.index(target).alias(WRITE_ALIAS).isWriteIndex(true))));
+        }
+        esClient.indices().updateAliases(u -> u.actions(actions));
+        log.info("【索引别名】读写别名已挂到 {}", target);
+    }
+
+    // 注解里表达不了 index_options (且需要随配置变化)，直接改生成好的 mapping
+    @SuppressWarnings("unchecked")
+    private void applyVectorIndexOptions(Document mapping) {
+        Object properties = mapping.get("properties");
+        if (!(properties instanceof Map<?, ?> fields) || !(fields.get(VECTOR_FIELD) instanceof Map<?, ?> vectorField)) {
+            throw new IllegalStateException("Mapping of " + VECTOR_FIELD + " not found in ArticleDocument");
+        }
+        ((Map<String, Object>) vectorField).put("index_options", vectorSearchProperties.indexOptions());
+    }
+
+    private Set<String> indicesOf(String alias) throws IOException {
+        if (!esClient.indices().existsAlias(e -> e.name(alias)).value()) return Set.of();
+        return esClient.indices().getAlias(g -> g.name(alias)).result().keySet();
+    }
+}
@@ -0,0 +1,310 @@
+package io.github.liangxin233666.mfl.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import io.github.liangxin233666.mfl.config.RabbitMqAuditConfig;
+import io.github.liangxin233666.mfl.dtos.AuditPassedEvent;
+import io.github.liangxin233666.mfl.entities.Article;
+import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
+import io.github.liangxin233666.mfl.repositories.ArticleRepository;
+import io.github.liangxin233666.mfl.repositories.es.EsArticleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * ES 文章索引全量重建
+ * 以前 ES 里的文档只在审核通过时写入一次，改 mapping 或集群丢数据后只能让每篇文章重新走一遍 Gemini。
+ * 这里从 Postgres 按主键游标分块读出已发布文章，向量和 AI 关键词优先复用旧索引里已有的，
+ * 多个 worker 并行 bulk 写入一个新的版本索引，写完后由 ArticleIndexManager 原子切换读写别名。
+ *
+ * 1. 写入期间关闭新索引的 refresh、副本数置 0，结束后恢复
+ * 2. 迁移期间各实例的线上写入双写到新索引；双写生效前的几秒按 updated_at 追平 (最多 MAX_CATCH_UP_ROUNDS 轮)
+ * 3. 旧索引里没有向量的文章先以纯文本写入，切换后直接投递向量队列补向量 (backfill，不重新审核，不改文章状态)
+ *
+ * 通过 app.search.reindex-on-startup=true 在启动完成后于后台触发。
+ */
+@Slf4j
+@Service
+public class ArticleReindexService {
+
+    private static final int CHUNK_SIZE = 500;
+    // 并行 worker 数：每个 worker 同时只有一个 bulk 请求在途
+    private static final int WORKERS = 4;
+    private static final int MAX_CATCH_UP_ROUNDS = 3;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    // 追平起点往前多留的秒数：覆盖其他实例发现迁移别名之前的写入 (ArticleIndexManager 每 5 秒探测一次)
+    private static final long CATCH_UP_MARGIN_SECONDS = 15;
+
+    private final ArticleRepository articleRepository;
+    private final EsArticleRepository esArticleRepository;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ElasticsearchClient esClient;
+    private final RabbitTemplate rabbitTemplate;
+    private final ArticleIndexManager articleIndexManager;
+    private final boolean reindexOnStartup;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 一次重建的结果：新索引名、写入文档数、复用向量数、缺向量 (已投递补向量) 数、耗时
+     */
+    public record ReindexReport(String index, long indexed, long reusedEmbeddings, long missingEmbeddings, long millis) {}
+
+    // 一次重建过程中各 worker 共享的计数
+    private static final class Progress {
+        private final AtomicLong indexed = new AtomicLong();
+        private final AtomicLong reused = new AtomicLong();
+        // 缺向量的文章 -> 旧索引里的 aiKeywords (没有则为空列表)，按发现顺序
+        private final Map<Long, List<String>> missing = Collections.synchronizedMap(new LinkedHashMap<>());
+    }
+
+    public ArticleReindexService(ArticleRepository articleRepository,
+                                 EsArticleRepository esArticleRepository,
+                                 ElasticsearchOperations elasticsearchOperations,
+                                 ElasticsearchClient esClient,
+                                 RabbitTemplate rabbitTemplate,
+                                 ArticleIndexManager articleIndexManager,
+                                 @Value("${app.search.reindex-on-startup:false}") boolean reindexOnStartup) {
+        this.articleRepository = articleRepository;
+        this.esArticleRepository = esArticleRepository;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.esClient = esClient;
+        this.rabbitTemplate = rabbitTemplate;
+        this.articleIndexManager = articleIndexManager;
+        this.reindexOnStartup = reindexOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reindexOnStartup() {
+        if (!reindexOnStartup) return;
+        Thread.ofVirtual().name("es-reindex").start(() -> {
+            try {
+                reindex();
+            } catch (Exception e) {
+                log.error("【索引重建】失败，读写别名未切换", e);
+            }
+        });
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * 同步执行一次全量重建；同一实例上同时只允许一个
+     */
+    public ReindexReport reindex() throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Reindex already running");
+        }
+        try {
+            return doReindex();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private ReindexReport doReindex() throws Exception {
+        long start = System.currentTimeMillis();
+        // 旧索引可能已丢失 (集群重建)，此时不查旧文档，全部按缺向量处理
+        boolean hasSource = elasticsearchOperations.indexOps(IndexCoordinates.of(ArticleIndexManager.READ_ALIAS)).exists();
+
+        String newIndex = articleIndexManager.createVersionedIndex();
+        OffsetDateTime since = OffsetDateTime.now().minusSeconds(CATCH_UP_MARGIN_SECONDS);
+        Progress progress = new Progress();
+        try {
+            String replicas = prepareForBulkLoad(newIndex);
+            articleIndexManager.beginMigration(newIndex);
+            log.info("【索引重建】开始写入新索引 {} (复用旧向量: {})", newIndex, hasSource);
+
+            // 1. 全量：按 id 游标分块
+            long[] cursor = {0L};
+            runPass(() -> {
+                List<Long> ids = articleRepository.findIdsByStatusAfter(Article.ArticleStatus.PUBLISHED, cursor[0], Limit.of(CHUNK_SIZE));
+                if (!ids.isEmpty()) cursor[0] = ids.get(ids.size() - 1);
+                return ids;
+            }, newIndex, hasSource, progress);
+
+            // 2. 追平：双写生效之前的新发布、修改只写在旧索引上，按 updated_at 再扫一遍
+            for (int round = 0; round < MAX_CATCH_UP_ROUNDS; round++) {
+                OffsetDateTime roundStart = OffsetDateTime.now().minusSeconds(CATCH_UP_MARGIN_SECONDS);
+                List<Long> changed = articleRepository.findIdsByStatusUpdatedSince(Article.ArticleStatus.PUBLISHED, since);
+                if (changed.isEmpty()) break;
+                log.info("【索引重建】第 {} 轮追平 {} 篇", round + 1, changed.size());
+                Iterator<Long> it = changed.iterator();
+                runPass(() -> {
+                    List<Long> ids = new ArrayList<>(CHUNK_SIZE);
+                    while (it.hasNext() && ids.size() < CHUNK_SIZE) ids.add(it.next());
+                    return ids;
+                }, newIndex, hasSource, progress);
+                since = roundStart;
+            }
+
+            // 3. 恢复 refresh / 副本，原子切换读写别名
+            finishBulkLoad(newIndex, replicas);
+            articleIndexManager.completeMigration(newIndex);
+        } catch (Exception e) {
+            articleIndexManager.abortMigration(newIndex);
+            throw e;
+        }
+
+        // 4. 缺向量的文章只补向量：直接进向量阶段 (backfill)，不重新审核，不改状态、不发通知，结果经写别名落到新索引
+        Map<Long, List<String>> missing;
+        synchronized (progress.missing) {
+            missing = new LinkedHashMap<>(progress.missing);
+        }
+        missing.forEach((articleId, keywords) -> rabbitTemplate.convertAndSend(
+                RabbitMqAuditConfig.VECTOR_SAVE_QUEUE, AuditPassedEvent.backfill(articleId, keywords)));
+
+        ReindexReport report = new ReindexReport(newIndex, progress.indexed.get(), progress.reused.get(),
+                missing.size(), System.currentTimeMillis() - start);
+        log.info("【索引重建】完成: {}", report);
+        return report;
+    }
+
+    // ==========================================
+    // 并行写入
+    // ==========================================
+
+    /**
+     * 单线程按 source 产出 id 分块，WORKERS 个虚拟线程各自查库 + bulk 写入；有界队列让读库速度跟着写入速度走
+     */
+    private void runPass(Supplier<List<Long>> source, String targetIndex, boolean hasSource, Progress progress) throws Exception {
+        BlockingQueue<List<Long>> chunks = new ArrayBlockingQueue<>(WORKERS * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(WORKERS, Thread.ofVirtual().name("es-reindex-", 0).factory());
+        try {
+            List<Future<?>> workers = new ArrayList<>(WORKERS);
+            for (int i = 0; i < WORKERS; i++) {
+                workers.add(executor.submit(() -> {
+                    while (true) {
+                        List<Long> ids = chunks.take();
+                        if (ids.isEmpty()) return null;
+                        indexChunk(ids, targetIndex, hasSource, progress);
+                    }
+                }));
+            }
+
+            List<Long> ids;
+            while (!(ids = source.get()).isEmpty()) {
+                enqueue(chunks, ids, workers);
+            }
+            // 空列表作为结束标记，每个 worker 一个
+            for (int i = 0; i < WORKERS; i++) {
+                enqueue(chunks, List.of(), workers);
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void enqueue(BlockingQueue<List<Long>> chunks, List<Long> ids, List<Future<?>> workers) throws Exception {
+        while (!chunks.offer(ids, 1, TimeUnit.SECONDS)) {
+            // 队列一直满说明 worker 卡住或已失败：已结束的 worker 在这里把异常抛出来
+            for (Future<?> worker : workers) {
+                if (worker.isDone()) worker.get();
+            }
+        }
+    }
+
+    private void indexChunk(List<Long> ids, String targetIndex, boolean hasSource, Progress progress) throws InterruptedException {
+        List<Article> articles = articleRepository.findAllWithTagsAndAuthorByIdIn(ids);
+
+        Map<Long, ArticleDocument> existing = new HashMap<>();
+        if (hasSource) {
+            esArticleRepository.findAllById(ids).forEach(doc -> existing.put(doc.getId(), doc));
+        }
+
+        List<IndexQuery> queries = new ArrayList<>(articles.size());
+        for (Article article : articles) {
+            // 分块之后状态可能又变了
+            if (article.getStatus() != Article.ArticleStatus.PUBLISHED) continue;
+
+            ArticleDocument old = existing.get(article.getId());
+            boolean reusable = old != null && old.getEmbeddingVector() != null;
+            if (reusable) {
+                progress.reused.incrementAndGet();
+            } else {
+                progress.missing.put(article.getId(),
+                        old != null && old.getAiKeywords() != null ? old.getAiKeywords() : List.of());
+            }
+
+            ArticleDocument doc = ArticleDocument.of(article,
+                    old != null ? old.getAiKeywords() : null,
+                    reusable ? old.getEmbeddingVector() : null);
+            queries.add(new IndexQueryBuilder().withId(String.valueOf(article.getId())).withObject(doc).build());
+        }
+        if (queries.isEmpty()) return;
+
+        bulkWithRetry(queries, IndexCoordinates.of(targetIndex));
+        long total = progress.indexed.addAndGet(queries.size());
+        log.debug("【索引重建】已写入 {} 篇", total);
+    }
+
+    /**
+     * 只重发失败的那几条；429 / 5xx 退避重试，其他错误 (mapping 不兼容等) 直接中止整个重建
+     */
+    private void bulkWithRetry(List<IndexQuery> queries, IndexCoordinates index) throws InterruptedException {
+        List<IndexQuery> pending = queries;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                elasticsearchOperations.bulkIndex(pending, index);
+                return;
+            } catch (BulkFailureException e) {
+                Map<String, BulkFailureException.FailureDetails> failures = e.getFailedDocuments();
+                for (BulkFailureException.FailureDetails failure : failures.values()) {
+                    if (!EsBulkIndexer.isRetryable(failure.status()) || attempt >= MAX_ATTEMPTS) throw e;
+                }
+                pending = pending.stream().filter(q -> failures.containsKey(q.getId())).toList();
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_ATTEMPTS) throw e;
+            }
+            Thread.sleep(BASE_BACKOFF_MILLIS << (attempt - 1));
+        }
+    }
+
+    // ==========================================
+    // 批量导入期间的索引设置
+    // ==========================================
+
+    /**
+     * 关闭 refresh、副本置 0 以加快写入
+     * @return 原副本数，写完后恢复
+     */
+    private String prepareForBulkLoad(String newIndex) throws IOException {
+        IndexState state = esClient.indices().getSettings(g -> g.index(newIndex)).get(newIndex);
+        String replicas = state != null && state.settings() != null && state.settings().index() != null
+                ? state.settings().index().numberOfReplicas() : null;
+
+        esClient.indices().putSettings(p -> p.index(newIndex)
+                .settings(s -> s.refreshInterval(t -> t.time("-1")).numberOfReplicas("0")));
+        return replicas != null ? replicas : "1";
+    }
+
+    private void finishBulkLoad(String newIndex, String replicas) throws IOException {
+        esClient.indices().putSettings(p -> p.index(newIndex)
+                .settings(s -> s.refreshInterval(t -> t.time("1s")).numberOfReplicas(replicas)));
+        esClient.indices().refresh(r -> r.index(newIndex));
+    }
+}
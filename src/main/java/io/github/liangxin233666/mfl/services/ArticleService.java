@@ -14,22 +14,24 @@ import io.github.liangxin233666.mfl.repositories.TagRepository;
 import io.github.liangxin233666.mfl.repositories.UserRepository;
 import io.github.liangxin233666.mfl.repositories.es.EsArticleRepository;
 import io.github.liangxin233666.mfl.repositories.projections.ArticleSimpleView;
+import io.github.liangxin233666.mfl.utils.EmbeddingCodec;
 import jakarta.persistence.criteria.Join;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.cache.annotation.CacheEvict;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
@@ -50,9 +52,21 @@ public class ArticleService {
     private final HistoryService historyService;
     private final RabbitTemplate rabbitTemplate;
     private final EsArticleRepository esArticleRepository;
-    private final UserService userService;
+    private final UserInterestBuffer userInterestBuffer;
+    private final ArticleEmbeddingCache articleEmbeddingCache;
     private final RecommendationService recommendationService;
     private final GlobalTrendManager globalTrendManager;
+    private final FeedTimelineService feedTimelineService;
+    private final FollowGraphService followGraphService;
+    private final FavoriteCountSyncer favoriteCountSyncer;
+    private final ArticleIndexManager articleIndexManager;
+    private final LocalVectorIndex localVectorIndex;
+    private final RecommendationCache recommendationCache;
+    private final RelatedArticlesService relatedArticlesService;
+    private final ColdStartFeedService coldStartFeedService;
+
+    // Feed 单页最多返回的文章数
+    private static final int MAX_FEED_PAGE_SIZE = 50;
 
 
     private static final Pattern TEMP_URL_PATTERN = Pattern.compile("https://?[^\\s\"]*/uploads/temp/[^\\s\")]+");
@@ -60,7 +74,7 @@ public class ArticleService {
     private static final Pattern URL_PATTERN = Pattern.compile(URL_REGEX);
 
 
-    public ArticleService(ArticleRepository articleRepository, UserRepository userRepository, TagRepository tagRepository, FileStorageService fileStorageService, NotificationProducer notificationProducer, HistoryService historyService, RabbitTemplate rabbitTemplate, EsArticleRepository esArticleRepository, UserService userService, RecommendationService recommendationService, GlobalTrendManager globalTrendManager) {
+    public ArticleService(ArticleRepository articleRepository, UserRepository userRepository, TagRepository tagRepository, FileStorageService fileStorageService, NotificationProducer notificationProducer, HistoryService historyService, RabbitTemplate rabbitTemplate, EsArticleRepository esArticleRepository, UserInterestBuffer userInterestBuffer, ArticleEmbeddingCache articleEmbeddingCache, RecommendationService recommendationService, GlobalTrendManager globalTrendManager, FeedTimelineService feedTimelineService, FollowGraphService followGraphService, FavoriteCountSyncer favoriteCountSyncer, ArticleIndexManager articleIndexManager, LocalVectorIndex localVectorIndex, RecommendationCache recommendationCache, RelatedArticlesService relatedArticlesService, ColdStartFeedService coldStartFeedService) {
         this.articleRepository = articleRepository;
         this.userRepository = userRepository;
         this.tagRepository = tagRepository;
@@ -70,9 +84,18 @@ public class ArticleService {
         this.historyService = historyService;
         this.rabbitTemplate = rabbitTemplate;
         this.esArticleRepository = esArticleRepository;
-        this.userService = userService;
+        this.userInterestBuffer = userInterestBuffer;
+        this.articleEmbeddingCache = articleEmbeddingCache;
         this.recommendationService = recommendationService;
         this.globalTrendManager = globalTrendManager;
+        this.feedTimelineService = feedTimelineService;
+        this.followGraphService = followGraphService;
+        this.favoriteCountSyncer = favoriteCountSyncer;
+        this.articleIndexManager = articleIndexManager;
+        this.localVectorIndex = localVectorIndex;
+        this.recommendationCache = recommendationCache;
+        this.relatedArticlesService = relatedArticlesService;
+        this.coldStartFeedService = coldStartFeedService;
     }
 
     @Transactional
@@ -155,11 +178,11 @@ public class ArticleService {
                 .map(Tag::getName)
                 .collect(Collectors.toList());
 
-        boolean isFavorited = (currentUser != null) && article.getFavoritedBy().contains(currentUser);
+        boolean isFavorited = (currentUser != null) && !checkLikedIds(List.of(article.getId()), currentUser.getId()).isEmpty();
         int favoritesCount = article.getFavoritesCount();
 
         User author = article.getAuthor();
-        boolean isFollowingAuthor = (currentUser != null) && author.getFollowers().contains(currentUser);
+        boolean isFollowingAuthor = (currentUser != null) && followGraphService.isFollowing(currentUser.getId(), author.getId());
 
         ProfileResponse.ProfileDto authorProfile = new ProfileResponse.ProfileDto(
                 author.getUsername(),
@@ -260,10 +283,15 @@ public class ArticleService {
         articleRepository.delete(article);
 
         try {
-            esArticleRepository.deleteById(article.getId());
+            articleIndexManager.delete(article.getId());
         } catch (Exception e) {
             log.error("Failed to delete article index from ES: {}", article.getId(), e);
         }
+        articleEmbeddingCache.invalidate(article.getId());
+        localVectorIndex.remove(article.getId());
+        relatedArticlesService.evict(article.getId());
+        coldStartFeedService.remove(article.getId());
+        recommendationCache.removeArticle(article.getId());
 
         fileStorageService.deleteFilesAsync(filesToDelete);
     }
@@ -272,19 +300,21 @@ public class ArticleService {
     @Transactional
     public ArticleResponse favoriteArticle(String slug, UserDetails currentUserDetails) {
         Article article = findArticleBySlug(slug);
-        User currentUser = findUserById(Long.valueOf(currentUserDetails.getUsername()));
+        Long currentUserId = Long.valueOf(currentUserDetails.getUsername());
 
-        if (!article.getFavoritedBy().contains(currentUser)) {
-            article.getFavoritedBy().add(currentUser);
+        // 插入成功才算新点赞：重复点击不会重复计数，也不会重复发通知
+        if (articleRepository.insertFavorite(currentUserId, article.getId()) > 0) {
+            articleRepository.adjustFavoritesCount(article.getId(), 1);
+            favoriteCountSyncer.markDirty(article.getId());
+            // adjustFavoritesCount 已清空持久化上下文，article 此时是游离对象，改它只影响本次返回值
             article.setFavoritesCount(article.getFavoritesCount() + 1);
-            Article savedArticle = articleRepository.save(article);
 
             notificationProducer.sendNotification(new NotificationEvent(
-                    currentUser.getId(),
-                    savedArticle.getAuthor().getId(),
+                    currentUserId,
+                    article.getAuthor().getId(),
                     NotificationEvent.EventType.ARTICLE_LIKED,
-                    savedArticle.getId(),
-                    savedArticle.getSlug(),
+                    article.getId(),
+                    article.getSlug(),
                     null
             ));
         }
@@ -295,10 +325,11 @@ public class ArticleService {
     @Transactional
     public ArticleResponse unfavoriteArticle(String slug, UserDetails currentUserDetails) {
         Article article = findArticleBySlug(slug);
-        User currentUser = findUserById(Long.valueOf(currentUserDetails.getUsername()));
+        Long currentUserId = Long.valueOf(currentUserDetails.getUsername());
 
-        if (article.getFavoritedBy().contains(currentUser)) {
-            article.getFavoritedBy().remove(currentUser);
+        if (articleRepository.deleteFavorite(currentUserId, article.getId()) > 0) {
+            articleRepository.adjustFavoritesCount(article.getId(), -1);
+            favoriteCountSyncer.markDirty(article.getId());
             article.setFavoritesCount(Math.max(0, article.getFavoritesCount() - 1));
         }
         return buildArticleResponseSimply(article, false);
@@ -314,13 +345,15 @@ public class ArticleService {
     // 逻辑：ES出ID -> ID出投影 -> 重组顺序 -> 批量查收藏状态 -> 构建Response
     // ==============================================================
     @Transactional(readOnly = true)
-    public MultipleArticlesResponse searchArticles(String query, Pageable pageable, UserDetails currentUserDetails) {
+    public MultipleArticlesResponse searchArticles(String query, boolean byPopularity, Pageable pageable, UserDetails currentUserDetails) {
         User currentUser = (currentUserDetails != null)
                 ? findUserById(Long.valueOf(currentUserDetails.getUsername()))
                 : null;
 
-        // 1. ES 查询获取相关性排序后的 Page
-        Page<ArticleDocument> esPage = esArticleRepository.searchIdeally(query, pageable);
+        // 1. ES 查询获取相关性排序后的 Page (热度模式再叠加点赞数与时间衰减)
+        Page<ArticleDocument> esPage = byPopularity
+                ? esArticleRepository.searchByPopularity(query, pageable)
+                : esArticleRepository.searchIdeally(query, pageable);
 
         if (esPage.isEmpty()) {
             return new MultipleArticlesResponse(List.of(), 0);
@@ -354,7 +387,8 @@ public class ArticleService {
         }
         if (currentUser != null) {
             historyService.recordHistoryAsync(currentUser, article);
-            updateUserInterestAsync(currentUser, article.getId());
+            // 兴趣向量走写后缓冲，多次浏览合并成一次 ES 读 + 一次行更新
+            userInterestBuffer.recordView(currentUser.getId(), article.getId());
         }
 
         return buildArticleResponse(article, currentUser);
@@ -461,36 +495,74 @@ public class ArticleService {
 
     // ==============================================================
     // 改动 3: getFeedArticles
-    // 逻辑：查找 Repository 定义的投影方法
+    // 逻辑：按 (created_at, id) 游标翻页，只传作者 ID，不查总数
     // ==============================================================
     @Transactional(readOnly = true)
-    public MultipleArticlesResponse getFeedArticles(Pageable pageable, UserDetails currentUserDetails) {
-        User currentUser = findUserById(Long.valueOf(currentUserDetails.getUsername()));
+    public ArticleFeedResponse getFeedArticles(String cursor, int limit, UserDetails currentUserDetails) {
+        Long currentUserId = Long.valueOf(currentUserDetails.getUsername());
+        int pageSize = Math.clamp(limit, 1, MAX_FEED_PAGE_SIZE);
 
-        List<User> followedUsers = List.copyOf(currentUser.getFollowing());
-        if (followedUsers.isEmpty()) {
-            return new MultipleArticlesResponse(List.of(), 0);
+        List<Long> followedIds = followGraphService.followingIdList(currentUserId);
+        if (followedIds.isEmpty()) {
+            return new ArticleFeedResponse(List.of(), null);
         }
 
-        // --- NEW: 调用 Repository 中返回 Page<ArticleSimpleView> 的方法 ---
-        Page<ArticleSimpleView> viewPage = articleRepository.findByAuthorInAndStatusOrderByCreatedAtDesc(
-                followedUsers,
-                Article.ArticleStatus.PUBLISHED,
-                pageable
-        );
+        FeedCursor position = cursor == null || cursor.isBlank() ? FeedCursor.FIRST : FeedCursor.decode(cursor);
 
-        if (viewPage.isEmpty()) {
-            return new MultipleArticlesResponse(List.of(), 0);
+        // 多取一条用来判断是否还有下一页；普通作者读 Redis 时间线，大V从库里拉取后合并
+        List<FeedTimelineService.FeedEntry> entries = feedTimelineService.entriesBefore(currentUserId, followedIds,
+                position.createdAt(), position.id(), pageSize + 1);
+        boolean hasMore = entries.size() > pageSize;
+        if (hasMore) {
+            entries = entries.subList(0, pageSize);
         }
+        if (entries.isEmpty()) {
+            return new ArticleFeedResponse(List.of(), null);
+        }
+        List<Long> ids = entries.stream().map(FeedTimelineService.FeedEntry::id).toList();
 
-        // 批量查点赞
-        Set<Long> likedIds = checkLikedIds(viewPage.getContent().stream().map(ArticleSimpleView::getId).toList(), currentUser.getId());
-
-        List<ArticleResponse.ArticleDto> articleDtos = viewPage.getContent().stream()
-                .map(view -> buildArticleResponseSimply(view, likedIds.contains(view.getId())).article())
-                .collect(Collectors.toList());
-
-        return new MultipleArticlesResponse(articleDtos, viewPage.getTotalElements());
+        List<ArticleSimpleView> views = articleRepository.findProjectedByIdIn(ids);
+        Map<Long, ArticleSimpleView> viewMap = views.stream()
+                .collect(Collectors.toMap(ArticleSimpleView::getId, Function.identity()));
+        Set<Long> likedIds = checkLikedIds(ids, currentUserId);
+
+        List<ArticleResponse.ArticleDto> articleDtos = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ArticleSimpleView view = viewMap.get(id);
+            // 时间线里可能有已删除或重新进入审核的文章
+            if (view == null || view.getStatus() != Article.ArticleStatus.PUBLISHED) continue;
+            articleDtos.add(buildArticleResponseSimply(view, likedIds.contains(id)).article());
+        }
+
+        // 游标取本页最后一项的排序键 (即使它被过滤掉，也不影响下一页的起点)
+        FeedTimelineService.FeedEntry last = entries.getLast();
+        String nextCursor = hasMore ? new FeedCursor(last.createdAt(), last.id()).encode() : null;
+        return new ArticleFeedResponse(articleDtos, nextCursor);
+    }
+
+    /**
+     * Feed 游标：上一页最后一篇的 (created_at, id)，对外是不透明的 Base64 字符串
+     */
+    private record FeedCursor(OffsetDateTime createdAt, Long id) {
+        // 第一页：比任何文章都"新"的位置
+        private static final FeedCursor FIRST = new FeedCursor(OffsetDateTime.of(9999, 12, 31, 0, 0, 0, 0, ZoneOffset.UTC), Long.MAX_VALUE);
+
+        private String encode() {
+            Instant instant = createdAt.toInstant();
+            String raw = instant.getEpochSecond() + "." + instant.getNano() + "." + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static FeedCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split("\\.");
+                Instant instant = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                return new FeedCursor(instant.atOffset(ZoneOffset.UTC), Long.valueOf(parts[2]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid feed cursor");
+            }
+        }
     }
 
     private Specification<Article> hasTag(String tagName) {
@@ -568,30 +640,24 @@ public class ArticleService {
     }
 
 
-    @Async
-    public void updateUserInterestAsync(User user, Long articleId) {
-        ArticleDocument doc = esArticleRepository.findById(articleId).orElse(null);
-        if (user != null && doc != null && doc.getEmbeddingVector() != null) {
-            String newVecStr = userService.updateUserEmbedding(user.getEmbeddingVector(), doc.getEmbeddingVector());
-            user.setEmbeddingVector(newVecStr);
-            userRepository.save(user);
-        }
-    }
-
-    @Transactional(readOnly = true)
+    // 不加 @Transactional：匿名用户走内存快照，不应该为此从连接池借连接；其余查询各自在仓库的只读事务里完成
     public MultipleArticlesResponse getRecommendedFeed(UserDetails currentUserDetails) {
-        User user = currentUserDetails == null ? null : findUserById(Long.valueOf(currentUserDetails.getUsername()));
-
-        // 注意：getArticles 我们也已经改成了使用 Projection 的版本，所以冷启动这里的逻辑是复用了优化
-        if (user == null) return getArticles(null, null, null, PageRequest.of(0, 16));
+        // 冷启动：匿名用户直接返回预先算好的热门/最新快照，完全不查数据库
+        if (currentUserDetails == null) {
+            ColdStartFeedService.Snapshot snapshot = coldStartFeedService.get();
+            return new MultipleArticlesResponse(snapshot.articles(), snapshot.articles().size());
+        }
 
-        float[] userVector = parseEmbeddingString(user.getEmbeddingVector());
+        User user = findUserById(Long.valueOf(currentUserDetails.getUsername()));
+        float[] userVector = EmbeddingCodec.decode(user.getEmbeddingVector());
 
         if (userVector == null) {
-            return getArticles(null, null, null, PageRequest.of(0, 16));
+            return coldStartFeedFor(user);
         }
 
-        List<Long> ids = recommendationService.recommendForUser(userVector, 16);
+        // 用户向量变化不大时直接复用上次的推荐结果
+        List<Long> ids = recommendationCache.get(user.getId(), userVector, 16,
+                () -> recommendationService.recommendForUser(userVector, 16));
 
         // --- NEW: 使用通用方法 fetching Projections 而非 Entity ---
         List<ArticleResponse.ArticleDto> dtos = fetchViewsByIdsAndPreserveOrder(ids, user);
@@ -599,16 +665,37 @@ public class ArticleService {
         return new MultipleArticlesResponse(dtos, dtos.size());
     }
 
+    // 还没有兴趣向量的登录用户：同一份快照，只补一次点赞状态查询
+    private MultipleArticlesResponse coldStartFeedFor(User user) {
+        ColdStartFeedService.Snapshot snapshot = coldStartFeedService.get();
+        Set<Long> likedIds = checkLikedIds(snapshot.ids(), user.getId());
+        if (likedIds.isEmpty()) {
+            return new MultipleArticlesResponse(snapshot.articles(), snapshot.articles().size());
+        }
+
+        List<ArticleResponse.ArticleDto> dtos = new ArrayList<>(snapshot.articles().size());
+        for (int i = 0; i < snapshot.ids().size(); i++) {
+            ArticleResponse.ArticleDto dto = snapshot.articles().get(i);
+            dtos.add(likedIds.contains(snapshot.ids().get(i)) ? withFavorited(dto) : dto);
+        }
+        return new MultipleArticlesResponse(dtos, dtos.size());
+    }
+
+    private static ArticleResponse.ArticleDto withFavorited(ArticleResponse.ArticleDto dto) {
+        return new ArticleResponse.ArticleDto(dto.slug(), dto.title(), dto.description(), dto.body(), dto.tagList(),
+                dto.createdAt(), dto.updatedAt(), true, dto.favoritesCount(), dto.coverImageUrl(), dto.author());
+    }
+
     @Transactional(readOnly = true)
     public MultipleArticlesResponse getRelatedArticles(String currentArticleSlug, UserDetails currentUserDetails) {
         User user = findUserById(Long.valueOf(currentUserDetails.getUsername()));
-        ArticleDocument sourceDoc = esArticleRepository.findBySlug(currentArticleSlug);
-
-        if (sourceDoc == null || sourceDoc.getEmbeddingVector() == null) {
+        // slug -> id 走 slug 唯一索引；相关列表本身是发布时预计算好的，未命中才回源 ES
+        Long articleId = articleRepository.findIdBySlug(currentArticleSlug).orElse(null);
+        if (articleId == null) {
             return new MultipleArticlesResponse(Collections.emptyList(), 0);
         }
 
-        List<Long> ids = recommendationService.getRelatedArticles(sourceDoc, 6);
+        List<Long> ids = relatedArticlesService.getRelated(articleId);
 
         // --- NEW: 使用通用方法 fetching Projections 而非 Entity ---
         List<ArticleResponse.ArticleDto> dtos = fetchViewsByIdsAndPreserveOrder(ids, user);
@@ -646,12 +733,4 @@ public class ArticleService {
         return articleRepository.findLikedArticleIds(userId, articleIds);
     }
 
-    private float[] parseEmbeddingString(String str) {
-        if (str == null || str.isBlank()) return null;
-        String[] parts = str.split(",");
-        float[] res = new float[parts.length];
-        for (int i = 0; i < parts.length; i++) res[i] = Float.parseFloat(parts[i]);
-        return res;
-    }
-
-}
\ No newline at end of file
+}
@@ -1,7 +1,10 @@
 package io.github.liangxin233666.mfl.services;
 
-import io.github.liangxin233666.mfl.config.RabbitMqAuditConfig;
+import io.github.liangxin233666.mfl.config.AutoScalerProperties;
+import io.github.liangxin233666.mfl.utils.ListenerThroughputRegistry;
 import io.github.liangxin233666.mfl.utils.PidController;
+import io.github.liangxin233666.mfl.utils.ThroughputController;
+import io.github.liangxin233666.mfl.utils.ThroughputMeter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
@@ -11,44 +14,58 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.springframework.beans.factory.ObjectProvider;
 
+/**
+ * 监听容器自动扩缩容
+ * 最初只管审核队列，现在按 app.autoscaler.policies[<监听容器ID>] 逐个容器独立调节
+ * (审核 / 向量入库 / 通知)，每个容器有自己的上下限、PID 参数、吞吐模式参数和冷却时间。
+ */
 @Slf4j
 @Service
 public class AuditAutoScaler {
 
     private final RabbitTemplate rabbitTemplate;
     private final ObjectProvider<RabbitListenerEndpointRegistry> registryProvider;
-    private final PidController pidController;
 
-    // --- 核心配置 ---
-    private static final int MIN_CONSUMERS = 2;
-    private static final int MAX_CONSUMERS = 20;
+    // listenerId -> 该容器的策略与运行时状态
+    private final Map<String, ScalingState> states = new LinkedHashMap<>();
 
-    // 阈值：变化量小于2个线程就不折腾，防止微小波动
-    private static final int THRESHOLD = 2;
-
-    // 紧急阈值：积压超过这个数，无视冷却直接扩容
-    private static final int EMERGENCY_THRESHOLD = 100;
-
-    // 非对称冷却时间
-    private static final long SCALE_UP_COOLDOWN_SECONDS = 5;  // 扩容快：5秒
-    private static final long SCALE_DOWN_COOLDOWN_SECONDS = 60; // 缩容慢：60秒
-
-    // PID 参数 (需要根据实际运行情况微调)
-    // Kp: 积压100个 -> 增益5个线程
-    // Ki: 消除稳态误差
-    // Kd: 抑制突变
-    private static final double KP = 0.05;
-    private static final double KI = 0.005;
-    private static final double KD = 0.02;
-
-    private Instant lastScaleTime = Instant.now();
+    /**
+     * 单个容器的运行时状态 (只在调度线程里读写)
+     */
+    private static class ScalingState {
+        private final String listenerId;
+        private final AutoScalerProperties.Policy policy;
+        private final PidController pidController;
+        private final ThroughputController throughputController;
+        private final ThroughputMeter throughputMeter;
+        private Instant lastScaleTime = Instant.now();
+        private long lastQueueDepth = 0;
+
+        private ScalingState(String listenerId, AutoScalerProperties.Policy policy, ThroughputMeter throughputMeter) {
+            this.listenerId = listenerId;
+            this.policy = policy;
+            // Kp: 积压100个 -> 增益5个线程；Ki: 消除稳态误差；Kd: 抑制突变
+            this.pidController = new PidController(policy.kp(), policy.ki(), policy.kd(),
+                    policy.minConsumers(), policy.maxConsumers());
+            this.throughputController = new ThroughputController(policy.targetDrainSeconds(), policy.headroom(),
+                    policy.minConsumers(), policy.maxConsumers());
+            this.throughputMeter = throughputMeter;
+        }
+    }
 
-    public AuditAutoScaler(RabbitTemplate rabbitTemplate, ObjectProvider<RabbitListenerEndpointRegistry> registryProvider) {
+    public AuditAutoScaler(RabbitTemplate rabbitTemplate, ObjectProvider<RabbitListenerEndpointRegistry> registryProvider,
+                           ListenerThroughputRegistry throughputRegistry, AutoScalerProperties properties) {
         this.rabbitTemplate = rabbitTemplate;
         this.registryProvider = registryProvider;
-        this.pidController = new PidController(KP, KI, KD, MIN_CONSUMERS, MAX_CONSUMERS);
+        if (properties.policies() != null) {
+            properties.policies().forEach((listenerId, policy) ->
+                    states.put(listenerId, new ScalingState(listenerId, policy, throughputRegistry.meter(listenerId))));
+        }
+        log.info("自动扩缩容已启用的监听容器: {}", states.keySet());
     }
 
     /**
@@ -62,31 +79,44 @@ public class AuditAutoScaler {
             return;
         }
 
+        for (ScalingState state : states.values()) {
+            try {
+                adjust(registry, state);
+            } catch (Exception e) {
+                // 单个容器出错不影响其他容器
+                log.error("扩缩容失败: {}", state.listenerId, e);
+            }
+        }
+    }
+
+    private void adjust(RabbitListenerEndpointRegistry registry, ScalingState state) {
+        AutoScalerProperties.Policy policy = state.policy;
+
         // 1. 获取容器
-        MessageListenerContainer container = registry.getListenerContainer(RabbitMqAuditConfig.AUDIT_LISTENER_ID);
+        MessageListenerContainer container = registry.getListenerContainer(state.listenerId);
         if (!(container instanceof SimpleMessageListenerContainer simpleContainer)) {
             return;
         }
 
         // 2. 获取实时指标
-        long queueDepth = getQueueDepth();
+        long queueDepth = getQueueDepth(policy.queue());
         int currentConsumers = simpleContainer.getActiveConsumerCount();
 
-        // 3. PID 计算理想线程数
+        // 3. 计算理想线程数 (PID 或 吞吐模式)
         // 注意：这里无论是否在冷却期，都先不进行 PID 内部 integral 的累加，
         // 我们通过逻辑控制，只在真正决定调整时才采纳 PID 的建议。
         // 但由于 PidController 是有状态的，为了避免没调用导致状态丢失，
         // 我们的 PidController 逻辑已经处理了平滑过渡。
-        int desiredConsumers = pidController.compute(0, queueDepth);
+        int desiredConsumers = computeDesiredConsumers(state, queueDepth);
 
         // 4. 判断扩缩容意图
         boolean isScalingUp = desiredConsumers > currentConsumers;
 
         // 5. 冷却逻辑检查
-        long secondsSinceLastScale = Duration.between(lastScaleTime, Instant.now()).getSeconds();
-        long requiredCooldown = isScalingUp ? SCALE_UP_COOLDOWN_SECONDS : SCALE_DOWN_COOLDOWN_SECONDS;
+        long secondsSinceLastScale = Duration.between(state.lastScaleTime, Instant.now()).getSeconds();
+        long requiredCooldown = isScalingUp ? policy.scaleUpCooldownSeconds() : policy.scaleDownCooldownSeconds();
 
-        boolean isEmergency = queueDepth > EMERGENCY_THRESHOLD;
+        boolean isEmergency = queueDepth > policy.emergencyThreshold();
         boolean inCooldown = secondsSinceLastScale < requiredCooldown;
 
         // 如果处于冷却期，且不是紧急情况，直接跳过
@@ -95,35 +125,54 @@ public class AuditAutoScaler {
         }
 
         // 6. 防抖动检查
-        if (Math.abs(desiredConsumers - currentConsumers) < THRESHOLD) {
+        if (Math.abs(desiredConsumers - currentConsumers) < policy.threshold()) {
             // 变化太小，不调整
             return;
         }
 
         // 7. 执行调整
-        log.info("PID 伸缩触发 | 积压: {} | 当前: {} -> 目标: {} | 模式: {}",
-                queueDepth, currentConsumers, desiredConsumers,
+        log.info("[{}] {} 伸缩触发 | 积压: {} | 当前: {} -> 目标: {} | 模式: {}",
+                state.listenerId, policy.mode(), queueDepth, currentConsumers, desiredConsumers,
                 isEmergency ? "紧急扩容" : (isScalingUp ? "扩容" : "缩容"));
 
         simpleContainer.setConcurrentConsumers(desiredConsumers);
         // Max 设为目标值 + 缓冲区，防止 Spring 内部频繁起停
-        simpleContainer.setMaxConcurrentConsumers(Math.max(desiredConsumers + 2, MAX_CONSUMERS));
+        simpleContainer.setMaxConcurrentConsumers(Math.max(desiredConsumers + 2, policy.maxConsumers()));
+
+        state.lastScaleTime = Instant.now();
+    }
+
+    private int computeDesiredConsumers(ScalingState state, long queueDepth) {
+        // 快照每次巡检都要取，保证窗口长度与巡检周期一致
+        ThroughputMeter.Snapshot snapshot = state.throughputMeter.snapshot();
+        long previousDepth = state.lastQueueDepth;
+        state.lastQueueDepth = queueDepth;
+
+        // 还没有耗时样本 (刚启动/一直空闲) 时退回 PID
+        if (state.policy.mode() == AutoScalerProperties.ScalingMode.PID || !snapshot.hasServiceTime()) {
+            return state.pidController.compute(0, queueDepth);
+        }
 
-        lastScaleTime = Instant.now();
+        // 到达数 = 本窗口完成数 + 积压增量
+        double arrivalRate = Math.max(0, snapshot.completed() + queueDepth - previousDepth) / snapshot.elapsedSeconds();
+        int desired = state.throughputController.compute(queueDepth, arrivalRate, snapshot.serviceSeconds());
+        log.debug("[{}] 吞吐模式 | λ={}/s | W={}s | 积压: {} -> 建议: {}", state.listenerId,
+                String.format("%.2f", arrivalRate), String.format("%.2f", snapshot.serviceSeconds()), queueDepth, desired);
+        return desired;
     }
 
-    private long getQueueDepth() {
+    private long getQueueDepth(String queue) {
         try {
             // 【核心修复】在这里显式地将 int 转为 Long，解决类型推断报错
             Long count = rabbitTemplate.execute(channel -> {
-                int msgCount = channel.queueDeclarePassive(RabbitMqAuditConfig.AUDIT_QUEUE).getMessageCount();
+                int msgCount = channel.queueDeclarePassive(queue).getMessageCount();
                 return (long) msgCount;
             });
 
             return count != null ? count : 0;
         } catch (Exception e) {
-            log.error("无法获取队列深度", e);
+            log.error("无法获取队列深度: {}", queue, e);
             return 0;
         }
     }
-}
\ No newline at end of file
+}
@@ -7,7 +7,7 @@ import io.github.liangxin233666.mfl.entities.Tag;
 import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
 import io.github.liangxin233666.mfl.events.NotificationEvent;
 import io.github.liangxin233666.mfl.repositories.ArticleRepository;
-import io.github.liangxin233666.mfl.repositories.es.EsArticleRepository;
+import io.github.liangxin233666.mfl.services.gemini.EmbeddingBatcher;
 import io.github.liangxin233666.mfl.services.gemini.GeminiService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -19,6 +19,9 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -27,12 +30,19 @@ import java.util.stream.Collectors;
 public class AuditConsumer {
 
     private final ArticleRepository articleRepository;
-    private final EsArticleRepository esArticleRepository;
+    private final EsBulkIndexer esBulkIndexer;
     private final GeminiService geminiService;
+    private final EmbeddingBatcher embeddingBatcher;
     private final NotificationProducer notificationProducer;
     private final TransactionTemplate transactionTemplate;
     private final RabbitTemplate rabbitTemplate;
+    private final ArticleEmbeddingCache articleEmbeddingCache;
+    private final FeedTimelineService feedTimelineService;
+    private final LocalVectorIndex localVectorIndex;
+    private final RelatedArticlesService relatedArticlesService;
     private static final Long SYSTEM_ACTOR_ID = 1L;
+    // 等待 ES 批量写入确认的上限 (含 EsBulkIndexer 内部的退避重试)
+    private static final long ES_INDEX_TIMEOUT_SECONDS = 30;
 
 
     @RabbitListener(id = RabbitMqAuditConfig.AUDIT_LISTENER_ID, queues = RabbitMqAuditConfig.AUDIT_QUEUE)
@@ -71,7 +81,8 @@ public class AuditConsumer {
     }
 
 
-    @RabbitListener(queues = RabbitMqAuditConfig.VECTOR_SAVE_QUEUE)
+    // 并发消费者越多，EmbeddingBatcher 越容易凑成多文本批次
+    @RabbitListener(id = RabbitMqAuditConfig.VECTOR_LISTENER_ID, queues = RabbitMqAuditConfig.VECTOR_SAVE_QUEUE, concurrency = "4-16")
     public void processVectorAndSave(AuditPassedEvent event) {
         log.info("阶段2-向量: 开始处理文章 ID: {}", event.articleId());
 
@@ -89,11 +100,22 @@ public class AuditConsumer {
             // 如果这里报错（例如超时），只会重试 generateVector，不重试 auditArticle
             float[] vector = generateVector(article, event.analysisResult());
 
-            // 3. 最终入库 (和原来逻辑一样，TransactionTemplate)
-            transactionTemplate.execute(status -> {
-                saveApprovedResult(article.getId(), event.analysisResult(), vector);
-                return null;
-            });
+            // 3. 最终入库 (和原来逻辑一样，TransactionTemplate)，ES 写入不再占用数据库事务
+            //    索引重建的补向量消息只写 ES：不改状态、不发通知、不推时间线
+            ArticleDocument doc = event.backfill()
+                    ? buildBackfilledDocument(article, event.analysisResult(), vector)
+                    : transactionTemplate.execute(status ->
+                            saveApprovedResult(article.getId(), event.analysisResult(), vector));
+            if (doc == null) return;
+
+            // 4. 事务提交后交给批量写入器，等它确认；失败则抛出，由 RabbitMQ 重试此阶段 (整段幂等)
+            awaitIndexed(doc);
+            // 进入 ES 后再进本地向量索引 (并广播给其他实例)
+            localVectorIndex.add(article.getId(), vector);
+            // 预计算相关文章列表，并让邻居的列表纳入这篇新文章 (异步)
+            if (!event.backfill()) {
+                relatedArticlesService.refreshOnPublish(doc);
+            }
 
             log.info("阶段2-向量: 流程全部完成");
 
@@ -103,6 +125,17 @@ public class AuditConsumer {
         }
     }
 
+    private void awaitIndexed(ArticleDocument doc) {
+        try {
+            esBulkIndexer.index(doc).get(ES_INDEX_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while indexing article " + doc.getId(), e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Failed to index article " + doc.getId() + " into Elasticsearch", e);
+        }
+    }
+
 
 
     // 辅助方法：生成向量（避免主逻辑太乱）
@@ -135,35 +168,44 @@ public class AuditConsumer {
             embeddingSource.append("Keywords: ").append(String.join(", ", result.keywords()));
         }
 
-        // E. 调用 Gemini 生成向量
-        return geminiService.generateEmbedding(embeddingSource.toString());
+        // E. 调用 Gemini 生成向量 (经由微批聚合器，与其他并发消息合并成一次请求)
+        return embeddingBatcher.embed(embeddingSource.toString());
     }
 
     // 5. 【关键】独立的事务方法：通过
 
-    public void saveApprovedResult(Long articleId, GeminiService.AnalysisResult result, float[] vector) {
+    public ArticleDocument saveApprovedResult(Long articleId, GeminiService.AnalysisResult result, float[] vector) {
         // 重新 fetch 一次，确保数据最新（虽然大部分情况可以直接用）
         Article article = articleRepository.findByIdWithTagsAndAuthor(articleId).orElseThrow();
+        // ES 写入失败时整个阶段会被重投，此时文章已是 PUBLISHED，不再重复发审核通过通知
+        boolean firstPublish = article.getStatus() != Article.ArticleStatus.PUBLISHED;
         article.setStatus(Article.ArticleStatus.PUBLISHED);
         articleRepository.save(article);
 
         log.info("aaaaaaaaaaaaaa");
 
-        // 构建 ES 文档逻辑保持不变
-        ArticleDocument doc = ArticleDocument.builder()
-                .id(article.getId())
-                .slug(article.getSlug())
-                .title(article.getTitle())
-                .description(article.getDescription())
-                .aiKeywords(result.keywords())
-                .embeddingVector(vector)
-                .originalTags(article.getTags().stream().map(Tag::getName).toList())
-                .authorName(article.getAuthor().getUsername())
-                .createdAt(article.getCreatedAt())
-                .build();
-
-        esArticleRepository.save(doc);
-        sendAuditNotification(article, NotificationEvent.EventType.ARTICLE_APPROVED, null);
+        // 审核通过时带上当前点赞数，之后的变化由 FavoriteCountSyncer 批量同步
+        ArticleDocument doc = ArticleDocument.of(article, result.keywords(), vector);
+
+        // 预热向量缓存：刚发布的文章最先被读者打开
+        articleEmbeddingCache.put(article.getId(), vector);
+        // 推送到粉丝的关注流时间线 (事务提交后执行)
+        feedTimelineService.onArticlePublished(article.getAuthor().getId(), article.getId(), article.getCreatedAt());
+        if (firstPublish) {
+            sendAuditNotification(article, NotificationEvent.EventType.ARTICLE_APPROVED, null);
+        }
+        // ES 文档交给调用方在事务提交后写入
+        return doc;
+    }
+
+    // 补向量：只针对仍是 PUBLISHED 的文章 (期间被删除/下架的跳过)，不触碰数据库状态
+    private ArticleDocument buildBackfilledDocument(Article article, GeminiService.AnalysisResult result, float[] vector) {
+        if (article.getStatus() != Article.ArticleStatus.PUBLISHED) {
+            log.info("阶段2-向量: 补向量时文章 {} 已不是发布状态，跳过", article.getId());
+            return null;
+        }
+        articleEmbeddingCache.put(article.getId(), vector);
+        return ArticleDocument.of(article, result.keywords(), vector);
     }
 
     // 6. 【关键】独立的事务方法：拒绝
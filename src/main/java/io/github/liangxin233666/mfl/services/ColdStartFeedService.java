@@ -0,0 +1,150 @@
+package io.github.liangxin233666.mfl.services;
+
+import io.github.liangxin233666.mfl.dtos.ArticleResponse;
+import io.github.liangxin233666.mfl.dtos.ProfileResponse;
+import io.github.liangxin233666.mfl.entities.Article;
+import io.github.liangxin233666.mfl.repositories.ArticleRepository;
+import io.github.liangxin233666.mfl.repositories.projections.ArticleSimpleView;
+import io.github.liangxin233666.mfl.utils.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 冷启动首页 (匿名用户 / 还没有兴趣向量的用户)
+ * 首页是 QPS 最高的接口，而冷启动内容对所有人都一样。这里定时把"趋势 + 最热 + 最新"三个榜单交错合并成一页，
+ * 转好 DTO 后作为不可变快照放在内存里，刷新时整体替换 (AtomicReference)，读取完全不碰数据库。
+ *
+ * 热榜走 idx_articles_hot_perf (status, favorites_count DESC)，最新走 idx_articles_latest_public (status, created_at DESC)，
+ * 趋势榜是对 GlobalTrendManager 各个趋势中心的多向量检索 (ES)，覆盖多个兴趣方向。
+ * 两次只查 id 的索引扫描 + 一次按 id 的投影查询。快照里的 favorited 一律为 false，登录用户由调用方补点赞状态。
+ */
+@Slf4j
+@Service
+public class ColdStartFeedService {
+
+    public static final int FEED_SIZE = 16;
+
+    /**
+     * 一份不可变的首页快照
+     */
+    public record Snapshot(List<Long> ids, List<ArticleResponse.ArticleDto> articles, long builtAtMillis) {}
+
+    private static final Snapshot EMPTY = new Snapshot(List.of(), List.of(), 0L);
+
+    private final ArticleRepository articleRepository;
+    private final RecommendationService recommendationService;
+    private final GlobalTrendManager globalTrendManager;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(EMPTY);
+
+    public ColdStartFeedService(ArticleRepository articleRepository, RecommendationService recommendationService,
+                                GlobalTrendManager globalTrendManager) {
+        this.articleRepository = articleRepository;
+        this.recommendationService = recommendationService;
+        this.globalTrendManager = globalTrendManager;
+    }
+
+    public Snapshot get() {
+        return current.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initOnStartup() {
+        refresh();
+    }
+
+    /**
+     * 每分钟重建一次；点赞数、新文章最多延迟一个周期
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void refresh() {
+        try {
+            Snapshot snapshot = build();
+            current.set(snapshot);
+            log.debug("【冷启动首页】快照已刷新，文章数: {}", snapshot.ids().size());
+        } catch (Exception e) {
+            // 保留旧快照继续服务
+            log.warn("【冷启动首页】刷新快照失败，继续使用旧快照: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 文章删除后 (事务提交后) 立即从本实例的快照中剔除，不等下一次刷新
+     */
+    public void remove(Long articleId) {
+        TransactionHooks.afterCommit(() -> current.updateAndGet(snapshot -> {
+            int index = snapshot.ids().indexOf(articleId);
+            if (index < 0) return snapshot;
+            List<Long> ids = new ArrayList<>(snapshot.ids());
+            List<ArticleResponse.ArticleDto> articles = new ArrayList<>(snapshot.articles());
+            ids.remove(index);
+            articles.remove(index);
+            return new Snapshot(List.copyOf(ids), List.copyOf(articles), snapshot.builtAtMillis());
+        }));
+    }
+
+    private Snapshot build() {
+        List<Long> hotIds = articleRepository.findTopHotArticles(Article.ArticleStatus.PUBLISHED,
+                        PageRequest.of(0, FEED_SIZE, Sort.by(Sort.Direction.DESC, "favoritesCount")))
+                .stream()
+                .map(ArticleSimpleView::getId)
+                .toList();
+        List<Long> latestIds = articleRepository.findLatestIdsByStatus(Article.ArticleStatus.PUBLISHED, Limit.of(FEED_SIZE));
+        // 趋势中心还没算出来 / ES 出错时为空，只剩热、新两路
+        List<Long> trendIds = recommendationService.recommendForTrends(globalTrendManager.getTrendCentroids(), FEED_SIZE);
+
+        // 趋势、热、新交错合并去重：覆盖多个兴趣方向，既有口碑内容，也让新文章有曝光
+        List<List<Long>> sources = List.of(trendIds, hotIds, latestIds);
+        LinkedHashSet<Long> merged = new LinkedHashSet<>();
+        for (int i = 0; merged.size() < FEED_SIZE && i < FEED_SIZE; i++) {
+            for (List<Long> source : sources) {
+                if (merged.size() < FEED_SIZE && i < source.size()) merged.add(source.get(i));
+            }
+        }
+        if (merged.isEmpty()) return EMPTY;
+
+        List<Long> orderedIds = new ArrayList<>(merged);
+        Map<Long, ArticleSimpleView> views = articleRepository.findProjectedByIdIn(orderedIds).stream()
+                .collect(Collectors.toMap(ArticleSimpleView::getId, Function.identity()));
+
+        List<Long> ids = new ArrayList<>(orderedIds.size());
+        List<ArticleResponse.ArticleDto> articles = new ArrayList<>(orderedIds.size());
+        for (Long id : orderedIds) {
+            ArticleSimpleView view = views.get(id);
+            // 两次查询之间被删除 / 下架的文章
+            if (view == null || view.getStatus() != Article.ArticleStatus.PUBLISHED) continue;
+            ids.add(id);
+            articles.add(toDto(view));
+        }
+        return new Snapshot(List.copyOf(ids), List.copyOf(articles), System.currentTimeMillis());
+    }
+
+    // 与 ArticleService 的投影版 DTO 一致：不带 body / tagList
+    private static ArticleResponse.ArticleDto toDto(ArticleSimpleView view) {
+        ArticleSimpleView.AuthorView author = view.getAuthor();
+        return new ArticleResponse.ArticleDto(
+                view.getSlug(),
+                view.getTitle(),
+                view.getDescription(),
+                null,
+                null,
+                view.getCreatedAt(),
+                view.getUpdatedAt(),
+                false,
+                view.getFavoritesCount(),
+                view.getCoverImageUrl(),
+                new ProfileResponse.ProfileDto(author.getUsername(), null, author.getImage(), null)
+        );
+    }
+}
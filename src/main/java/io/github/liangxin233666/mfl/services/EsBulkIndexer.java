@@ -0,0 +1,275 @@
+package io.github.liangxin233666.mfl.services;
+
+import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文章文档的 ES 批量写入器
+ * 审核通过的文章不再在数据库事务里逐条 save (单条 index 请求 + 刷新)，而是在事务提交后交给这里：
+ * 攒够 MAX_BATCH_SIZE 条或等满 LINGER_MILLIS 就合并成一次 bulk 请求。
+ * 单条失败按状态码区分：429 / 5xx 退避后单独重试，其余 (如 mapping 错误) 直接失败，交给调用方。
+ * 调用方拿到的是 CompletableFuture，审核消费者会等它完成，失败时抛异常让 RabbitMQ 重试，语义和原来一致。
+ */
+@Slf4j
+@Service
+public class EsBulkIndexer {
+
+    private static final int MAX_BATCH_SIZE = 200;
+    private static final long LINGER_MILLIS = 500;
+    // 队列上限：满了以后 index() 阻塞调用方，形成背压
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 200;
+    // 关闭时等调度线程写完手上这一批的上限
+    private static final long STOP_JOIN_MILLIS = 30_000;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ArticleIndexManager articleIndexManager;
+    private final BlockingQueue<PendingDocument> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    // 正在退避等待、尚未回到队列的重试
+    private final Set<PendingDocument> retrying = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = false;
+    private Thread dispatcher;
+
+    // --- 指标 ---
+    private final AtomicLong indexedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private volatile long lastFlushMillis = 0;
+    private volatile double avgFlushMillis = 0;
+
+    private record PendingDocument(ArticleDocument document, CompletableFuture<Void> future, int attempt) {}
+
+    /**
+     * 指标快照：队列深度、累计成功/失败/重试数、刷写次数、最近一次与平均 (EWMA) 刷写耗时
+     */
+    public record Stats(int queueDepth, long indexed, long failed, long retried, long flushes,
+                        long lastFlushMillis, double avgFlushMillis) {}
+
+    public EsBulkIndexer(ElasticsearchOperations elasticsearchOperations, ArticleIndexManager articleIndexManager) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.articleIndexManager = articleIndexManager;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatcher = Thread.ofVirtual().name("es-bulk-indexer").start(this::dispatchLoop);
+    }
+
+    /**
+     * 关闭：先让调度线程写完手上这一批 (不打断进行中的 bulk 请求)，再把队列里剩下的同步刷完 (不再重试)，
+     * 还在退避等待的重试直接以失败结束，保证关闭后没有永远不完成的 future
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            try {
+                dispatcher.join(STOP_JOIN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (dispatcher.isAlive()) {
+                log.warn("【ES批量写入】调度线程 {} ms 内未结束，强制中断", STOP_JOIN_MILLIS);
+                dispatcher.interrupt();
+            }
+        }
+
+        List<PendingDocument> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += MAX_BATCH_SIZE) {
+            flush(rest.subList(from, Math.min(from + MAX_BATCH_SIZE, rest.size())), false);
+        }
+
+        for (PendingDocument pending : retrying) {
+            if (retrying.remove(pending)) {
+                fail(pending, new IllegalStateException("EsBulkIndexer stopped before retrying " + pending.document().getId()));
+            }
+        }
+    }
+
+    /**
+     * 入队，返回的 future 在文档写入成功 (或最终失败) 时完成
+     */
+    public CompletableFuture<Void> index(ArticleDocument document) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("EsBulkIndexer is stopped"));
+            return future;
+        }
+        try {
+            queue.put(new PendingDocument(document, future, 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public Stats stats() {
+        return new Stats(queue.size(), indexedCount.get(), failedCount.get(), retriedCount.get(),
+                flushCount.get(), lastFlushMillis, avgFlushMillis);
+    }
+
+    @Scheduled(fixedRate = 60000)
+    public void logStats() {
+        Stats stats = stats();
+        if (stats.flushes() == 0 && stats.queueDepth() == 0) return;
+        log.info("【ES批量写入】队列: {}, 成功: {}, 失败: {}, 重试: {}, 刷写: {} 次, 最近耗时: {}ms, 平均: {}ms",
+                stats.queueDepth(), stats.indexed(), stats.failed(), stats.retried(), stats.flushes(),
+                stats.lastFlushMillis(), String.format("%.1f", stats.avgFlushMillis()));
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                // 限时等待而不是 take()：关闭时不需要中断就能退出循环
+                PendingDocument first = queue.poll(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                List<PendingDocument> batch = new ArrayList<>(MAX_BATCH_SIZE);
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    PendingDocument next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch, true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void flush(List<PendingDocument> batch, boolean allowRetry) {
+        // 同一批里同一篇文章只保留最后一次写入
+        Map<String, PendingDocument> latest = new LinkedHashMap<>();
+        for (PendingDocument pending : batch) {
+            PendingDocument replaced = latest.put(String.valueOf(pending.document().getId()), pending);
+            if (replaced != null) {
+                pending.future().whenComplete((v, e) -> {
+                    if (e == null) replaced.future().complete(null);
+                    else replaced.future().completeExceptionally(e);
+                });
+            }
+        }
+
+        List<IndexQuery> queries = latest.entrySet().stream()
+                .map(e -> new IndexQueryBuilder().withId(e.getKey()).withObject(e.getValue().document()).build())
+                .toList();
+
+        long start = System.nanoTime();
+        // 迁移期间写别名和新索引各写一份，任一边失败都算失败 (index 操作幂等，重试会两边重写)
+        Map<String, BulkFailureException.FailureDetails> failures = new HashMap<>();
+        Exception requestError = null;
+        try {
+            for (String target : articleIndexManager.writeIndices()) {
+                try {
+                    elasticsearchOperations.bulkIndex(queries, IndexCoordinates.of(target));
+                } catch (BulkFailureException e) {
+                    e.getFailedDocuments().forEach(failures::putIfAbsent);
+                }
+            }
+        } catch (Exception e) {
+            requestError = e;
+        }
+        recordFlush(System.nanoTime() - start);
+
+        for (Map.Entry<String, PendingDocument> entry : latest.entrySet()) {
+            PendingDocument pending = entry.getValue();
+            BulkFailureException.FailureDetails failure = failures.get(entry.getKey());
+
+            if (requestError == null && failure == null) {
+                indexedCount.incrementAndGet();
+                pending.future().complete(null);
+                continue;
+            }
+
+            // 整个请求失败 (连接/超时) 一律视为可重试；单条失败只重试限流和服务端错误
+            boolean retryable = requestError != null || isRetryable(failure.status());
+            if (allowRetry && retryable && pending.attempt() < MAX_ATTEMPTS) {
+                retriedCount.incrementAndGet();
+                scheduleRetry(pending);
+            } else {
+                failedCount.incrementAndGet();
+                String reason = requestError != null ? requestError.getMessage() : failure.errorMessage();
+                log.error("【ES批量写入】文档 {} 写入失败 (第 {} 次): {}", entry.getKey(), pending.attempt(), reason);
+                pending.future().completeExceptionally(requestError != null ? requestError
+                        : new IllegalStateException("Bulk index failed for " + entry.getKey() + ": " + reason));
+            }
+        }
+    }
+
+    private void scheduleRetry(PendingDocument pending) {
+        if (!running) {
+            fail(pending, new IllegalStateException("EsBulkIndexer stopped, not retrying " + pending.document().getId()));
+            return;
+        }
+        PendingDocument next = new PendingDocument(pending.document(), pending.future(), pending.attempt() + 1);
+        retrying.add(next);
+        long backoff = BASE_BACKOFF_MILLIS << (pending.attempt() - 1);
+        Thread.ofVirtual().name("es-bulk-retry").start(() -> {
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (retrying.remove(next)) fail(next, e);
+                return;
+            }
+            // 已被 stop() 接管 (并以失败结束)
+            if (!retrying.remove(next)) return;
+            if (!running) {
+                fail(next, new IllegalStateException("EsBulkIndexer stopped, not retrying " + next.document().getId()));
+                return;
+            }
+            try {
+                queue.put(next);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(next, e);
+                return;
+            }
+            // 入队与 stop() 的最后一次 drain 交错：还在队列里说明没人会再处理它
+            if (!running && queue.remove(next)) {
+                fail(next, new IllegalStateException("EsBulkIndexer stopped, not retrying " + next.document().getId()));
+            }
+        });
+    }
+
+    private void fail(PendingDocument pending, Exception cause) {
+        failedCount.incrementAndGet();
+        pending.future().completeExceptionally(cause);
+    }
+
+    private void recordFlush(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        lastFlushMillis = millis;
+        flushCount.incrementAndGet();
+        // 只有调度线程 (或关闭时的调用线程) 写入，EWMA 不需要加锁
+        avgFlushMillis = avgFlushMillis == 0 ? millis : 0.2 * millis + 0.8 * avgFlushMillis;
+    }
+
+    static boolean isRetryable(Integer status) {
+        return status == null || status == 429 || status >= 500;
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.liangxin233666.mfl.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import io.github.liangxin233666.mfl.repositories.ArticleRepository;
+import io.github.liangxin233666.mfl.repositories.projections.ArticleSimpleView;
+import io.github.liangxin233666.mfl.utils.TransactionHooks;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 点赞数同步到 ES (去抖 + 批量)
+ * 点赞/取消点赞只把文章 ID 记进脏集合；每 10 秒把这段时间内变化过的文章一次性从库里读出最新计数，
+ * 用一个 bulk 请求做局部更新。同一篇文章 10 秒内被赞 1000 次，ES 只收到 1 次更新。
+ * 写入的是数据库里的当前值而不是增量，所以重复同步、多实例同时同步都是幂等的。
+ */
+@Slf4j
+@Service
+public class FavoriteCountSyncer {
+
+    private static final int BULK_SIZE = 500;
+
+    private final ArticleRepository articleRepository;
+    private final ElasticsearchClient esClient;
+    private final ArticleIndexManager articleIndexManager;
+
+    private final Set<Long> dirtyIds = ConcurrentHashMap.newKeySet();
+
+    public FavoriteCountSyncer(ArticleRepository articleRepository, ElasticsearchClient esClient, ArticleIndexManager articleIndexManager) {
+        this.articleRepository = articleRepository;
+        this.esClient = esClient;
+        this.articleIndexManager = articleIndexManager;
+    }
+
+    /**
+     * 标记计数已变化 (事务提交后才入队，回滚的点赞不会触发同步)
+     */
+    public void markDirty(Long articleId) {
+        if (articleId == null) return;
+        TransactionHooks.afterCommit(() -> dirtyIds.add(articleId));
+    }
+
+    @Scheduled(fixedDelay = 10000)
+    public void sync() {
+        if (dirtyIds.isEmpty()) return;
+
+        // 逐个摘除，期间新标记的留到下一轮
+        List<Long> batch = new ArrayList<>();
+        for (Iterator<Long> it = dirtyIds.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            it.remove();
+        }
+
+        for (int from = 0; from < batch.size(); from += BULK_SIZE) {
+            List<Long> chunk = batch.subList(from, Math.min(from + BULK_SIZE, batch.size()));
+            try {
+                syncChunk(chunk);
+            } catch (Exception e) {
+                // ES 不可用：放回脏集合，下一轮重试
+                dirtyIds.addAll(chunk);
+                log.error("【点赞同步】bulk 更新失败，{} 篇文章等待重试", chunk.size(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        sync();
+    }
+
+    private void syncChunk(List<Long> articleIds) throws Exception {
+        List<ArticleSimpleView> counts = articleRepository.findFavoriteCountsByIdIn(articleIds);
+        if (counts.isEmpty()) return;
+
+        // 迁移期间新旧索引都要更新；新索引里还没灌到的文档会 404，重建时自然带上库里的计数
+        List<String> targets = articleIndexManager.writeIndices();
+        List<BulkOperation> operations = new ArrayList<>(counts.size() * targets.size());
+        for (ArticleSimpleView view : counts) {
+            long favoritesCount = view.getFavoritesCount() == null ? 0 : view.getFavoritesCount();
+            for (String target : targets) {
+                operations.add(BulkOperation.of(op -> op.update(u -> u
+                        .index(target)
+                        .id(String.valueOf(view.getId()))
+                        .action(a -> a.doc(Map.of("favoritesCount", favoritesCount))))));
+            }
+        }
+
+        BulkResponse response = esClient.bulk(b -> b.operations(operations));
+        if (response.errors()) {
+            // 常见原因是文章还没审核通过 (ES 里没有文档)，审核入库时会带上当时的计数，这里忽略即可
+            long failed = response.items().stream().filter(item -> item.error() != null).count();
+            BulkResponseItem sample = response.items().stream().filter(item -> item.error() != null).findFirst().orElse(null);
+            log.warn("【点赞同步】{} / {} 条更新失败，例如 id={}: {}", failed, operations.size(),
+                    sample == null ? null : sample.id(), sample == null ? null : sample.error().reason());
+        }
+        log.debug("【点赞同步】已同步 {} 篇文章的点赞数", operations.size());
+    }
+}
@@ -0,0 +1,251 @@
+package io.github.liangxin233666.mfl.services;
+
+import io.github.liangxin233666.mfl.entities.Article;
+import io.github.liangxin233666.mfl.repositories.ArticleRepository;
+import io.github.liangxin233666.mfl.repositories.UserRepository;
+import io.github.liangxin233666.mfl.repositories.projections.FeedEntryView;
+import io.github.liangxin233666.mfl.utils.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 关注流的推拉结合时间线 (Fan-out on write + pull)
+ * 普通作者发布文章时，把文章 ID 推进每个粉丝的 Redis 有序集合 timeline:<userId> (score 为发布时间的微秒数)；
+ * 粉丝数超过阈值的"大V"不推送 (一次发布写几十万个 key 不划算)，读取时单独从数据库拉取再合并。
+ * 读 Feed = 一次 ZREVRANGEBYSCORE + (可选) 一次只针对大V的索引查询，而不是每次扫所有关注作者。
+ *
+ * 时间线是可丢弃的缓存：key 不存在时从数据库重建；推送只写已存在的 key，避免产生不完整的时间线；
+ * 每条时间线有固定 TTL，过期后重建，顺带修正大V身份变化、关注关系变化带来的偏差。
+ */
+@Slf4j
+@Service
+public class FeedTimelineService {
+
+    private static final String TIMELINE_PREFIX = "timeline:";
+    private static final String CELEBRITIES_KEY = "timeline:celebrities";
+    // 每条时间线最多保留的文章数，翻得更深时退回纯拉取模式
+    private static final int MAX_TIMELINE_SIZE = 800;
+    private static final Duration TIMELINE_TTL = Duration.ofDays(1);
+    // 粉丝数超过该值的作者不做写扩散
+    private static final long CELEBRITY_FOLLOWER_THRESHOLD = 10_000;
+    // 一次 Lua 调用推送的粉丝数
+    private static final int FANOUT_BATCH_SIZE = 1_000;
+    // 占位成员：保证"有 key 但没有文章"的时间线也存在，分数高于任何真实时间，所以不会被裁剪，也不会被游标查询读到
+    private static final String SENTINEL = "-";
+    private static final double SENTINEL_SCORE = 9e18;
+
+    // 只往已存在的时间线里推，并裁剪到上限 (占位成员分数最高，始终保留)
+    private static final DefaultRedisScript<Long> PUSH_SCRIPT = new DefaultRedisScript<>("""
+            local pushed = 0
+            for _, key in ipairs(KEYS) do
+                if redis.call('EXISTS', key) == 1 then
+                    redis.call('ZADD', key, ARGV[1], ARGV[2])
+                    redis.call('ZREMRANGEBYRANK', key, 0, -(tonumber(ARGV[3]) + 2))
+                    pushed = pushed + 1
+                end
+            end
+            return pushed
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ArticleRepository articleRepository;
+    private final UserRepository userRepository;
+
+    /**
+     * Feed 中的一项：排序键 (created_at, id)
+     */
+    public record FeedEntry(Long id, OffsetDateTime createdAt) {}
+
+    // 按时间点比较 (数据库与 Redis 还原出的偏移量可能不同)，同一时刻按 id 决胜
+    private static final Comparator<FeedEntry> NEWEST_FIRST = Comparator
+            .comparing((FeedEntry e) -> e.createdAt().toInstant()).thenComparing(FeedEntry::id).reversed();
+
+    public FeedTimelineService(StringRedisTemplate redisTemplate, ArticleRepository articleRepository, UserRepository userRepository) {
+        this.redisTemplate = redisTemplate;
+        this.articleRepository = articleRepository;
+        this.userRepository = userRepository;
+    }
+
+    // ==========================================
+    // 写：发布时推送
+    // ==========================================
+
+    /**
+     * 文章发布后推送到粉丝时间线 (事务提交后执行；失败只记录，读取时仍能从库里拉到)
+     */
+    public void onArticlePublished(Long authorId, Long articleId, OffsetDateTime createdAt) {
+        TransactionHooks.afterCommit(() -> {
+            try {
+                fanOut(authorId, articleId, createdAt);
+            } catch (Exception e) {
+                log.warn("【时间线】推送失败: articleId={}, {}", articleId, e.getMessage());
+            }
+        });
+    }
+
+    private void fanOut(Long authorId, Long articleId, OffsetDateTime createdAt) {
+        long followers = userRepository.countFollowers(authorId);
+        if (followers > CELEBRITY_FOLLOWER_THRESHOLD) {
+            redisTemplate.opsForSet().add(CELEBRITIES_KEY, String.valueOf(authorId));
+            log.info("【时间线】作者 {} 粉丝 {}，按大V处理，不做写扩散", authorId, followers);
+            return;
+        }
+        redisTemplate.opsForSet().remove(CELEBRITIES_KEY, String.valueOf(authorId));
+        if (followers == 0) return;
+
+        String score = String.valueOf(toScore(createdAt));
+        String member = String.valueOf(articleId);
+        String maxSize = String.valueOf(MAX_TIMELINE_SIZE);
+
+        List<Long> followerIds = userRepository.findFollowerIds(authorId);
+        long pushed = 0;
+        for (int from = 0; from < followerIds.size(); from += FANOUT_BATCH_SIZE) {
+            List<String> keys = followerIds.subList(from, Math.min(from + FANOUT_BATCH_SIZE, followerIds.size())).stream()
+                    .map(FeedTimelineService::timelineKey)
+                    .toList();
+            Long count = redisTemplate.execute(PUSH_SCRIPT, keys, score, member, maxSize);
+            pushed += count == null ? 0 : count;
+        }
+        log.debug("【时间线】文章 {} 推送完成: 粉丝 {}，在线时间线 {}", articleId, followerIds.size(), pushed);
+    }
+
+    /**
+     * 关注关系变化后丢弃时间线，下次读取时按新的关注列表重建
+     */
+    public void invalidate(Long userId) {
+        TransactionHooks.afterCommit(() -> {
+            try {
+                redisTemplate.delete(timelineKey(userId));
+            } catch (Exception e) {
+                log.warn("【时间线】失效失败: userId={}, {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    // ==========================================
+    // 读：时间线 + 大V拉取 合并
+    // ==========================================
+
+    /**
+     * 取游标 (beforeCreatedAt, beforeId) 之前最新的 fetchSize 项，已按 (created_at, id) 倒序
+     * 时间线不可用 (Redis 异常) 或翻过了时间线保留范围时，退回纯拉取
+     */
+    public List<FeedEntry> entriesBefore(Long userId, List<Long> followedIds,
+                                         OffsetDateTime beforeCreatedAt, Long beforeId, int fetchSize) {
+        try {
+            Set<Long> celebrities = celebrityIds();
+            List<Long> pushedAuthors = new ArrayList<>(followedIds.size());
+            List<Long> pulledAuthors = new ArrayList<>();
+            for (Long authorId : followedIds) {
+                (celebrities.contains(authorId) ? pulledAuthors : pushedAuthors).add(authorId);
+            }
+
+            List<FeedEntry> fromTimeline = List.of();
+            if (!pushedAuthors.isEmpty()) {
+                String key = timelineKey(userId);
+                ensureTimeline(key, pushedAuthors);
+                fromTimeline = readTimeline(key, beforeCreatedAt, beforeId, fetchSize);
+                // 时间线被裁剪过且这一页读不满：已经翻到时间线之外，整体退回拉取
+                if (fromTimeline.size() < fetchSize && isTruncated(key)) {
+                    return pull(followedIds, beforeCreatedAt, beforeId, fetchSize);
+                }
+            }
+
+            List<FeedEntry> fromCelebrities = pulledAuthors.isEmpty() ? List.of()
+                    : pull(pulledAuthors, beforeCreatedAt, beforeId, fetchSize);
+
+            return merge(fromTimeline, fromCelebrities, fetchSize);
+        } catch (Exception e) {
+            log.warn("【时间线】读取失败，退回拉取模式: userId={}, {}", userId, e.getMessage());
+            return pull(followedIds, beforeCreatedAt, beforeId, fetchSize);
+        }
+    }
+
+    private void ensureTimeline(String key, List<Long> pushedAuthors) {
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(key))) return;
+
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC).plusDays(1);
+        List<FeedEntry> latest = pull(pushedAuthors, now, Long.MAX_VALUE, MAX_TIMELINE_SIZE);
+
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(latest.size() + 1);
+        tuples.add(ZSetOperations.TypedTuple.of(SENTINEL, SENTINEL_SCORE));
+        latest.forEach(e -> tuples.add(ZSetOperations.TypedTuple.of(String.valueOf(e.id()), (double) toScore(e.createdAt()))));
+        // 并发重建时后写的覆盖先写的，内容相同，无害
+        redisTemplate.opsForZSet().add(key, tuples);
+        redisTemplate.expire(key, TIMELINE_TTL);
+        log.debug("【时间线】重建 {}: {} 篇", key, latest.size());
+    }
+
+    private List<FeedEntry> readTimeline(String key, OffsetDateTime beforeCreatedAt, Long beforeId, int fetchSize) {
+        long beforeScore = toScore(beforeCreatedAt);
+        // 与游标同一微秒的条目可能已在上一页出现过，多取几条再精确过滤
+        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet()
+                .reverseRangeByScoreWithScores(key, Double.NEGATIVE_INFINITY, beforeScore, 0, fetchSize + 8);
+        if (tuples == null) return List.of();
+
+        List<FeedEntry> entries = new ArrayList<>(tuples.size());
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (SENTINEL.equals(tuple.getValue()) || tuple.getScore() == null) continue;
+            long score = tuple.getScore().longValue();
+            long id = Long.parseLong(tuple.getValue());
+            if (score == beforeScore && id >= beforeId) continue;
+            entries.add(new FeedEntry(id, fromScore(score)));
+        }
+        entries.sort(NEWEST_FIRST);
+        return entries.size() > fetchSize ? entries.subList(0, fetchSize) : entries;
+    }
+
+    private boolean isTruncated(String key) {
+        Long size = redisTemplate.opsForZSet().zCard(key);
+        // 含占位成员
+        return size != null && size > MAX_TIMELINE_SIZE;
+    }
+
+    private Set<Long> celebrityIds() {
+        Set<String> members = redisTemplate.opsForSet().members(CELEBRITIES_KEY);
+        if (members == null || members.isEmpty()) return Set.of();
+        return members.stream().map(Long::valueOf).collect(Collectors.toSet());
+    }
+
+    private List<FeedEntry> pull(Collection<Long> authorIds, OffsetDateTime beforeCreatedAt, Long beforeId, int fetchSize) {
+        List<FeedEntryView> views = articleRepository.findFeedEntriesBefore(authorIds, Article.ArticleStatus.PUBLISHED,
+                beforeCreatedAt, beforeId, Limit.of(fetchSize));
+        return views.stream().map(v -> new FeedEntry(v.getId(), v.getCreatedAt())).toList();
+    }
+
+    private static List<FeedEntry> merge(List<FeedEntry> a, List<FeedEntry> b, int fetchSize) {
+        if (b.isEmpty()) return a;
+        if (a.isEmpty()) return b;
+        // 大V身份切换前推送过的文章可能两边都有，按 id 去重
+        Map<Long, FeedEntry> byId = new HashMap<>();
+        a.forEach(e -> byId.put(e.id(), e));
+        b.forEach(e -> byId.putIfAbsent(e.id(), e));
+        return byId.values().stream().sorted(NEWEST_FIRST).limit(fetchSize).toList();
+    }
+
+    private static String timelineKey(Long userId) {
+        return TIMELINE_PREFIX + userId;
+    }
+
+    // 微秒精度与 PostgreSQL TIMESTAMPTZ 一致；当前时间的微秒数约 1.7e15，double 可精确表示
+    private static long toScore(OffsetDateTime time) {
+        Instant instant = time.toInstant();
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    private static OffsetDateTime fromScore(long score) {
+        return Instant.ofEpochSecond(Math.floorDiv(score, 1_000_000L), Math.floorMod(score, 1_000_000L) * 1_000L)
+                .atOffset(ZoneOffset.UTC);
+    }
+}
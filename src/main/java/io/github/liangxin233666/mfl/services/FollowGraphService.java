@@ -0,0 +1,136 @@
+package io.github.liangxin233666.mfl.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.liangxin233666.mfl.repositories.UserRepository;
+import io.github.liangxin233666.mfl.utils.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 关注关系图
+ * 以前判断"我是否关注了 TA"要初始化 User.following / User.followers 整个懒加载集合 (大V的粉丝集合就是十万行实体)。
+ * 现在所有判断都换成"当前用户关注了谁"：直接查 user_follows，结果缓存为排好序的 long[] (二分查找)，
+ * 一个关注 1000 人的用户只占 8KB；关注/取关直接写关联表，不加载任何集合。
+ *
+ * 缓存在本机 Caffeine 中，关注关系变化时经 Redis Pub/Sub 通知所有实例失效，TTL 兜底。
+ */
+@Slf4j
+@Service
+public class FollowGraphService implements MessageListener {
+
+    public static final String INVALIDATE_CHANNEL = "follow:invalidate";
+
+    private static final long[] EMPTY = new long[0];
+
+    private final UserRepository userRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final FeedTimelineService feedTimelineService;
+
+    // followerId -> 排好序的 followedId 数组
+    private final Cache<Long, long[]> followingCache = Caffeine.newBuilder()
+            .maximumWeight(64L * 1024 * 1024)
+            .weigher((Long userId, long[] ids) -> 16 + ids.length * Long.BYTES)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    public FollowGraphService(UserRepository userRepository, StringRedisTemplate redisTemplate, FeedTimelineService feedTimelineService) {
+        this.userRepository = userRepository;
+        this.redisTemplate = redisTemplate;
+        this.feedTimelineService = feedTimelineService;
+    }
+
+    // ==========================================
+    // 查询
+    // ==========================================
+
+    public boolean isFollowing(Long followerId, Long followedId) {
+        if (followerId == null || followedId == null) return false;
+        return Arrays.binarySearch(followingIds(followerId), followedId) >= 0;
+    }
+
+    /**
+     * 在 candidates 中筛出 followerId 已关注的那些
+     */
+    public Set<Long> followingAmong(Long followerId, Collection<Long> candidates) {
+        if (followerId == null || candidates.isEmpty()) return Collections.emptySet();
+        long[] ids = followingIds(followerId);
+        Set<Long> result = new HashSet<>();
+        for (Long candidate : candidates) {
+            if (candidate != null && Arrays.binarySearch(ids, candidate) >= 0) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    public List<Long> followingIdList(Long followerId) {
+        long[] ids = followingIds(followerId);
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids) list.add(id);
+        return list;
+    }
+
+    private long[] followingIds(Long followerId) {
+        return followingCache.get(followerId, id -> {
+            List<Long> ids = userRepository.findFollowedIds(id);
+            if (ids.isEmpty()) return EMPTY;
+            long[] sorted = ids.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            return sorted;
+        });
+    }
+
+    // ==========================================
+    // 修改 (需在事务中调用)
+    // ==========================================
+
+    /**
+     * @return true 表示新建了关注关系，false 表示本来就已关注
+     */
+    public boolean follow(Long followerId, Long followedId) {
+        boolean changed = userRepository.insertFollow(followerId, followedId) > 0;
+        if (changed) onChanged(followerId);
+        return changed;
+    }
+
+    /**
+     * @return true 表示删除了关注关系，false 表示本来就没关注
+     */
+    public boolean unfollow(Long followerId, Long followedId) {
+        boolean changed = userRepository.deleteFollow(followerId, followedId) > 0;
+        if (changed) onChanged(followerId);
+        return changed;
+    }
+
+    private void onChanged(Long followerId) {
+        feedTimelineService.invalidate(followerId);
+        TransactionHooks.afterCommit(() -> {
+            followingCache.invalidate(followerId);
+            try {
+                redisTemplate.convertAndSend(INVALIDATE_CHANNEL, String.valueOf(followerId));
+            } catch (Exception e) {
+                log.warn("广播关注缓存失效失败 (其他实例将在 TTL 后刷新): {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Redis Pub/Sub 回调：其他实例上的关注关系变化
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            followingCache.invalidate(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析关注缓存失效消息: {}", e.getMessage());
+        }
+    }
+}
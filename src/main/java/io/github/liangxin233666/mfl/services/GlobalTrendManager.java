@@ -4,127 +4,224 @@ package io.github.liangxin233666.mfl.services;
 import io.github.liangxin233666.mfl.entities.Article;
 import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
 import io.github.liangxin233666.mfl.repositories.ArticleRepository;
-import io.github.liangxin233666.mfl.repositories.es.EsArticleRepository;
 import io.github.liangxin233666.mfl.repositories.projections.ArticleSimpleView;
+import io.github.liangxin233666.mfl.utils.KMeans;
+import io.github.liangxin233666.mfl.utils.VectorUtils;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilterBuilder;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * 全网趋势模型
+ * 以前是把点赞最多的 20 篇文章向量取平均，所有新用户拿到同一个重心，内容口味被抹平成"平均值"。
+ * 现在取最近 SAMPLE_WINDOW 内最热的至多 SAMPLE_SIZE 篇文章，用 mini-batch k-means 聚成若干个趋势中心，
+ * 每个中心带权重 (按 log 点赞数加权的样本占比)，冷启动推荐对这些中心做多向量检索。
+ *
+ * 聚类在独立的 ForkJoinPool 上并行，整个刷新在虚拟线程里执行，不占用 @Scheduled 调度线程；
+ * 几万个 768 维向量在数秒内完成，期间继续使用旧结果。
+ */
 @Slf4j
 @Service
 public class GlobalTrendManager {
 
     private final ArticleRepository articleRepository;
-    private final EsArticleRepository esArticleRepository;
+    private final ElasticsearchOperations elasticsearchOperations;
 
     // 常量：Gemini Embedding 的维度
     private static final int DIMENSIONS = 768;
+    private static final String VECTOR_FIELD = "embeddingVector";
+
+    // 采样：最近 90 天内点赞最多的至多 2 万篇；窗口内太少 (新站 / 冷清期) 时退回全时段热榜
+    private static final int SAMPLE_SIZE = 20_000;
+    private static final Duration SAMPLE_WINDOW = Duration.ofDays(90);
+    private static final int MIN_WINDOW_SAMPLE = 200;
+    // 一次按 id 从 ES 取向量的数量
+    private static final int FETCH_CHUNK = 1000;
+
+    // 聚类参数
+    private static final int CLUSTERS = 8;
+    private static final int BATCH_SIZE = 1024;
+    private static final int ITERATIONS = 100;
+
+    /**
+     * 一个趋势中心：单位向量 + 权重 (所有中心权重之和为 1)
+     */
+    public record TrendCentroid(float[] vector, double weight) {}
 
     // 原子引用：保证高并发读取时的线程安全，默认值为零向量
     private final AtomicReference<float[]> globalHotVector = new AtomicReference<>(new float[DIMENSIONS]);
+    private final AtomicReference<List<TrendCentroid>> trendCentroids = new AtomicReference<>(List.of());
 
-    public GlobalTrendManager(ArticleRepository articleRepository, EsArticleRepository esArticleRepository) {
+    // 聚类只用一半的核，不和请求线程抢 CPU
+    private final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    public GlobalTrendManager(ArticleRepository articleRepository, ElasticsearchOperations elasticsearchOperations) {
         this.articleRepository = articleRepository;
-        this.esArticleRepository = esArticleRepository;
+        this.elasticsearchOperations = elasticsearchOperations;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
     }
 
     /**
-     * 对外暴露接口：获取当前的全网热门向量
+     * 对外暴露接口：获取当前的全网热门向量 (全部样本的加权重心，用作新用户的初始兴趣向量)
      */
     public float[] getGlobalHotVector() {
         return globalHotVector.get();
     }
 
+    /**
+     * 当前的趋势中心，按权重降序；还没算出来时为空列表
+     */
+    public List<TrendCentroid> getTrendCentroids() {
+        return trendCentroids.get();
+    }
+
     @EventListener(ApplicationReadyEvent.class)
     public void initOnStartup() {
         log.info("【全网趋势】检测到系统启动，正在进行初始化计算...");
         refreshGlobalHotVector();
     }
 
-
     /**
      * 定时任务：每1小时（3600000毫秒）重新计算一次全网趋势
-     * 这里的逻辑是：找出"已发布"且"点赞最多"的文章，算出它们向量的平均值（重心）。
+     * 只负责把任务丢到虚拟线程；上一轮还没结束时直接跳过
      */
     @Scheduled(fixedRate = 3600000)
     public void refreshGlobalHotVector() {
-        log.info("【全网趋势】开始重新计算全网热门文章向量重心...");
-
-        // 1. 获取热门文章 ID
-        // 条件：状态必须是 PUBLISHED
-        // 排序：favoritesCount 倒序
-        // 数量：Top 20
-
-        List<ArticleSimpleView> topArticles = articleRepository.findTopHotArticles(Article.ArticleStatus.PUBLISHED,
-                PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "favoritesCount")));
+        if (!refreshing.compareAndSet(false, true)) {
+            log.info("【全网趋势】上一轮计算尚未结束，跳过本次。");
+            return;
+        }
+        Thread.ofVirtual().name("global-trend").start(() -> {
+            try {
+                recompute();
+            } catch (Exception e) {
+                log.error("【全网趋势】计算失败，继续使用旧结果", e);
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
 
+    private void recompute() {
+        long start = System.currentTimeMillis();
+        log.info("【全网趋势】开始重新计算全网趋势中心...");
 
-        if (topArticles.isEmpty()) {
+        // 1. 获取热门文章 ID + 点赞数 (PUBLISHED，按 favoritesCount 倒序)
+        List<ArticleSimpleView> hotArticles = sampleHotArticles();
+        if (hotArticles.isEmpty()) {
             log.info("【全网趋势】暂无已发布文章，跳过计算。");
             return;
         }
 
-        // 提取 ID 列表
-        List<Long> ids = topArticles.stream()
-                // 只要流里的对象有 getId() 方法就能编译通过
-                .map(ArticleSimpleView::getId)
+        // 2. 去 Elasticsearch 分批捞取向量 (只取向量字段)
+        Map<Long, float[]> vectors = fetchVectors(hotArticles.stream().map(ArticleSimpleView::getId).toList());
+
+        // 3. 收集有效向量：归一化后参与聚类，样本权重 1 + ln(1 + 点赞数)，热门文章更重但不至于一家独大
+        List<float[]> points = new ArrayList<>(vectors.size());
+        List<Double> weights = new ArrayList<>(vectors.size());
+        for (ArticleSimpleView view : hotArticles) {
+            float[] vector = vectors.get(view.getId());
+            if (vector == null) continue;
+            int favorites = view.getFavoritesCount() == null ? 0 : Math.max(0, view.getFavoritesCount());
+            points.add(vector);
+            weights.add(1.0 + Math.log1p(favorites));
+        }
+        if (points.isEmpty()) {
+            log.warn("【全网趋势】无法找到对应ID的有效向量（可能是刚同步或Embedding未生成）。");
+            return;
+        }
+
+        float[][] pointArray = points.toArray(new float[0][]);
+        double[] weightArray = weights.stream().mapToDouble(Double::doubleValue).toArray();
+
+        // 4. 聚类 + 整体加权重心
+        List<KMeans.Cluster> clusters = KMeans.miniBatch(pointArray, weightArray, CLUSTERS, BATCH_SIZE, ITERATIONS,
+                System.currentTimeMillis(), pool);
+        List<TrendCentroid> centroids = clusters.stream()
+                .map(cluster -> new TrendCentroid(cluster.centroid(), cluster.weight()))
                 .toList();
 
-        // 2. 去 Elasticsearch 批量捞取向量数据
-        // 因为 sql 里只存了文本 url，核心向量在 ES 里
-        Iterable<ArticleDocument> docsIterable = esArticleRepository.findAllById(ids);
-
-        // 3. 收集有效向量
-        List<float[]> validVectors = new ArrayList<>();
-        docsIterable.forEach(doc -> {
-            float[] vec = doc.getEmbeddingVector();
-            // 严谨校验：非空且维度正确（防止某些旧数据或失败数据的维度不对）
-            if (vec != null && vec.length == DIMENSIONS) {
-                validVectors.add(vec);
-            }
-        });
+        trendCentroids.set(centroids);
+        globalHotVector.set(weightedMean(pointArray, weightArray));
 
-        // 4. 计算重心 (Average)
-        if (!validVectors.isEmpty()) {
-            float[] newCentroid = calculateCentroid(validVectors);
+        log.info("【全网趋势】计算完成。采样文章数(DB): {}, 有效向量数(ES): {}, 趋势中心: {} (权重 {}), 耗时 {} ms",
+                hotArticles.size(), points.size(), centroids.size(),
+                centroids.stream().map(c -> String.format("%.2f", c.weight())).toList(),
+                System.currentTimeMillis() - start);
+    }
 
-            // 更新内存中的全局变量
-            globalHotVector.set(newCentroid);
+    private List<ArticleSimpleView> sampleHotArticles() {
+        PageRequest page = PageRequest.of(0, SAMPLE_SIZE, Sort.by(Sort.Direction.DESC, "favoritesCount"));
+        List<ArticleSimpleView> recent = articleRepository.findHotArticlesSince(Article.ArticleStatus.PUBLISHED,
+                OffsetDateTime.now().minus(SAMPLE_WINDOW), page);
+        if (recent.size() >= MIN_WINDOW_SAMPLE) return recent;
+        return articleRepository.findTopHotArticles(Article.ArticleStatus.PUBLISHED, page);
+    }
 
-            log.info("【全网趋势】计算完成。采样文章数(DB): {}, 有效向量数(ES): {}。全局向量已更新。",
-                    topArticles.size(), validVectors.size());
-        } else {
-            log.warn("【全网趋势】无法找到对应ID的有效向量（可能是刚同步或Embedding未生成）。");
+    private Map<Long, float[]> fetchVectors(List<Long> ids) {
+        Map<Long, float[]> vectors = new HashMap<>(ids.size() * 2);
+        for (int from = 0; from < ids.size(); from += FETCH_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + FETCH_CHUNK)).stream()
+                    .map(String::valueOf)
+                    .toList();
+            NativeQuery query = NativeQuery.builder()
+                    .withQuery(q -> q.ids(i -> i.values(chunk)))
+                    .withSourceFilter(new FetchSourceFilterBuilder().withIncludes("id", VECTOR_FIELD).build())
+                    .withPageable(PageRequest.of(0, chunk.size()))
+                    .build();
+            for (SearchHit<ArticleDocument> hit : elasticsearchOperations.search(
+                    query, ArticleDocument.class, IndexCoordinates.of(ArticleDocument.READ_ALIAS))) {
+                ArticleDocument doc = hit.getContent();
+                // 严谨校验：非空且维度正确（防止某些旧数据或失败数据的维度不对）
+                float[] vector = doc.getEmbeddingVector();
+                if (doc.getId() == null || vector == null || vector.length != DIMENSIONS) continue;
+                float[] normalized = VectorUtils.normalize(vector);
+                if (normalized != null) vectors.put(doc.getId(), normalized);
+            }
         }
+        return vectors;
     }
 
     /**
-     * 内部数学工具：计算一组向量的平均值
+     * 内部数学工具：计算一组向量的加权平均值
      */
-    private float[] calculateCentroid(List<float[]> vectors) {
-        float[] result = new float[DIMENSIONS];
-        int count = vectors.size();
-
-        // 累加每一维
-        for (float[] vector : vectors) {
+    private float[] weightedMean(float[][] vectors, double[] weights) {
+        double[] sum = new double[DIMENSIONS];
+        double total = 0;
+        for (int n = 0; n < vectors.length; n++) {
+            float[] vector = vectors[n];
             for (int i = 0; i < DIMENSIONS; i++) {
-                result[i] += vector[i];
+                sum[i] += weights[n] * vector[i];
             }
+            total += weights[n];
         }
 
-        // 每一维除以总数
+        float[] result = new float[DIMENSIONS];
         for (int i = 0; i < DIMENSIONS; i++) {
-            result[i] = result[i] / count;
+            result[i] = (float) (sum[i] / total);
         }
-
         return result;
     }
-}
\ No newline at end of file
+}
@@ -1,90 +1,244 @@
 package io.github.liangxin233666.mfl.services;
 
 import io.github.liangxin233666.mfl.config.RabbitMqConfig;
-import io.github.liangxin233666.mfl.entities.Notification;
 import io.github.liangxin233666.mfl.events.NotificationEvent;
-import io.github.liangxin233666.mfl.repositories.NotificationRepository;
 import io.github.liangxin233666.mfl.repositories.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
 @Service
 @Slf4j
 public class NotificationConsumer {
 
-    private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final UnreadCounter unreadCounter;
+    private final NotificationStreamService notificationStreamService;
 
     // 对应生产者中定义的系统 ID 常量
     private static final Long SYSTEM_ACTOR_ID = -1L;
 
-    public NotificationConsumer(NotificationRepository nr, UserRepository ur) {
-        this.notificationRepository = nr;
+    // IDENTITY 主键下 Hibernate 无法批量插入，这里直接走 JDBC batch
+    private static final String INSERT_SQL = """
+            INSERT INTO notifications
+                (target_user_id, actor_id, event_type, resource_id, resource_slug, is_read, created_at, content)
+            VALUES (?, ?, ?, ?, ?, FALSE, ?, ?)
+            """;
+
+    // 需要聚合的事件类型：同一 (接收者, 类型, 文章) 在一个窗口内只保留一行未读通知
+    private static final Set<NotificationEvent.EventType> AGGREGATED_TYPES = EnumSet.of(NotificationEvent.EventType.ARTICLE_LIKED);
+    private static final long AGGREGATE_WINDOW_SECONDS = 3600;
+    private static final int MAX_RECENT_ACTORS = 5;
+
+    // 批内已合并，所以一条语句里每个冲突键只出现一次；RETURNING 区分新插入还是合并进了已有未读行
+    // aggregate_count 按不同的触发者计数：合并时减去本批与已有行 recent_actor_ids 的交集 (这些人已经算过)，
+    // 只保留最近 MAX_RECENT_ACTORS 人，更早的人反复点赞仍可能多算，对"N 人赞了"的展示足够
+    // recent_actor_ids 合并后去重，保留每人第一次出现的位置 (即最新的一次)
+    private static final String UPSERT_AGGREGATED_SQL = """
+            INSERT INTO notifications
+                (target_user_id, actor_id, event_type, resource_id, resource_slug, is_read, created_at,
+                 aggregate_count, aggregate_window, recent_actor_ids)
+            SELECT t.target_user_id, t.actor_id, t.event_type, t.resource_id, t.resource_slug, FALSE, ?,
+                   t.cnt, ?, t.recent::BIGINT[]
+            FROM unnest(?::BIGINT[], ?::BIGINT[], ?::TEXT[], ?::BIGINT[], ?::TEXT[], ?::INT[], ?::TEXT[])
+                 AS t(target_user_id, actor_id, event_type, resource_id, resource_slug, cnt, recent)
+            ON CONFLICT (target_user_id, event_type, resource_id, aggregate_window)
+                WHERE is_read = FALSE AND aggregate_window IS NOT NULL
+            DO UPDATE SET aggregate_count  = notifications.aggregate_count + EXCLUDED.aggregate_count
+                                             - cardinality(ARRAY(SELECT unnest(EXCLUDED.recent_actor_ids)
+                                                                 INTERSECT
+                                                                 SELECT unnest(notifications.recent_actor_ids))),
+                          actor_id         = EXCLUDED.actor_id,
+                          resource_slug    = EXCLUDED.resource_slug,
+                          recent_actor_ids = ARRAY(SELECT u.actor
+                                                   FROM unnest(EXCLUDED.recent_actor_ids || notifications.recent_actor_ids)
+                                                        WITH ORDINALITY AS u(actor, ord)
+                                                   GROUP BY u.actor
+                                                   ORDER BY min(u.ord)
+                                                   LIMIT %d),
+                          created_at       = EXCLUDED.created_at
+            RETURNING target_user_id, (xmax = 0) AS inserted
+            """.formatted(MAX_RECENT_ACTORS);
+
+    private record AggregateKey(Long targetUserId, NotificationEvent.EventType type, Long resourceId) {}
+
+    // 批内合并的中间结果：actors 为最新在前，count 为批内不同触发者的人数
+    private static class AggregateGroup {
+        private final Set<Long> distinctActors = new HashSet<>();
+        private String resourceSlug;
+        private final LinkedList<Long> actors = new LinkedList<>();
+
+        private void add(NotificationEvent event) {
+            distinctActors.add(event.actorId());
+            resourceSlug = event.resourceSlug();
+            actors.remove(event.actorId());
+            actors.addFirst(event.actorId());
+            if (actors.size() > MAX_RECENT_ACTORS) actors.removeLast();
+        }
+    }
+
+    public NotificationConsumer(UserRepository ur, JdbcTemplate jdbcTemplate, UnreadCounter unreadCounter,
+                                NotificationStreamService notificationStreamService) {
         this.userRepository = ur;
+        this.jdbcTemplate = jdbcTemplate;
+        this.unreadCounter = unreadCounter;
+        this.notificationStreamService = notificationStreamService;
     }
 
-    @RabbitListener(queues = RabbitMqConfig.QUEUE_NAME)
+    /**
+     * 批量消费：一次投递最多 NOTIFICATION_BATCH_SIZE 条，一个事务、一次 JDBC batch 插入，整批一起 ack
+     */
+    @RabbitListener(id = RabbitMqConfig.NOTIFICATION_LISTENER_ID, queues = RabbitMqConfig.QUEUE_NAME,
+            containerFactory = RabbitMqConfig.NOTIFICATION_BATCH_FACTORY)
     @Transactional
-    public void handleNotification(NotificationEvent event) {
+    public void handleNotifications(List<NotificationEvent> events) {
 
-        log.info("Processing notification event: type={}, resource={}, targetUser={}",
-                event.type(), event.resourceSlug(), event.targetUserId());
-
-        // 1. 数据完整性基础校验
-        if (event.targetUserId() == null) {
-            log.error("Invalid notification event (missing target): {}", event);
-            return; // 放弃消息，避免死循环重试
-        }
+        log.info("Processing notification batch: size={}", events.size());
 
         try {
-            Notification notification = new Notification();
-
-            // 2. 设置目标接收者 (使用 getReferenceById 延迟加载，提高性能)
-            // 如果用户被删除，这里会在 save 时抛出异常，这是符合预期的
-            notification.setTargetUser(userRepository.getReferenceById(event.targetUserId()));
-
-            // 3. 设置触发者 (Actor) - 处理系统消息
-            if (SYSTEM_ACTOR_ID.equals(event.actorId())) {
-                // 如果是系统消息，触发者设为 NULL
-                // 前提：请确保你的 Notification 实体中，Actor 字段允许为 NULL
-                notification.setActor(null);
-            } else if (event.actorId() != null) {
-                // 如果是正常用户消息
-                notification.setActor(userRepository.getReferenceById(event.actorId()));
-            } else {
-                // actorId 为空的情况 (虽然理论上 Producer 应该避免，但作为兜底)
-                notification.setActor(null);
+            // 1. 数据完整性基础校验
+            List<NotificationEvent> valid = new ArrayList<>(events.size());
+            for (NotificationEvent event : events) {
+                if (event == null || event.targetUserId() == null || event.resourceId() == null) {
+                    log.error("Invalid notification event (missing target/resource): {}", event);
+                    continue; // 放弃消息，避免死循环重试
+                }
+                // actor_id 列是 NOT NULL，系统消息 (-1) 和缺失 actor 的事件原本就会插入失败
+                if (event.actorId() == null || SYSTEM_ACTOR_ID.equals(event.actorId())) {
+                    log.warn("Notification without a real actor dropped: {}", event);
+                    continue;
+                }
+                valid.add(event);
+            }
+            if (valid.isEmpty()) return;
+
+            // 2. 一次查询过滤掉已注销的用户 (替代原来逐条 getReferenceById + EntityNotFoundException)
+            Set<Long> userIds = new HashSet<>();
+            valid.forEach(e -> {
+                userIds.add(e.targetUserId());
+                userIds.add(e.actorId());
+            });
+            Set<Long> existing = userRepository.findExistingIds(userIds);
+
+            List<NotificationEvent> toInsert = valid.stream()
+                    .filter(e -> existing.contains(e.targetUserId()) && existing.contains(e.actorId()))
+                    .toList();
+            if (toInsert.size() < valid.size()) {
+                log.warn("User not found for {} notification(s), dropping them.", valid.size() - toInsert.size());
+            }
+            if (toInsert.isEmpty()) return;
+
+            Instant now = Instant.now();
+
+            // 3. 可聚合的事件 (点赞) 先在批内合并，再与库里同窗口的未读行合并
+            List<NotificationEvent> plain = toInsert.stream()
+                    .filter(e -> !AGGREGATED_TYPES.contains(e.type()))
+                    .toList();
+            List<NotificationEvent> aggregatable = toInsert.stream()
+                    .filter(e -> AGGREGATED_TYPES.contains(e.type()))
+                    .toList();
+
+            // 每个接收者新增的未读行数，事务提交后再写入 Redis 计数器
+            Map<Long, Long> newUnread = new HashMap<>();
+            upsertAggregated(aggregatable, now, newUnread);
+
+            // 4. 其余事件 JDBC 批量插入
+            if (!plain.isEmpty()) {
+                Timestamp createdAt = Timestamp.from(now);
+                jdbcTemplate.batchUpdate(INSERT_SQL, plain, plain.size(), (ps, event) -> {
+                    ps.setLong(1, event.targetUserId());
+                    ps.setLong(2, event.actorId());
+                    ps.setString(3, event.type().name());
+                    ps.setLong(4, event.resourceId());
+                    ps.setString(5, event.resourceSlug());
+                    ps.setTimestamp(6, createdAt);
+                    ps.setString(7, event.payload());
+                });
+                plain.forEach(e -> newUnread.merge(e.targetUserId(), 1L, Long::sum));
             }
+            unreadCounter.incrementAll(newUnread);
+            // 计数先更新、再推送 (同一事务的提交回调按注册顺序执行)；合并进已有行的聚合通知也推送，计数不变但列表有变化
+            Set<Long> touched = new HashSet<>(newUnread.keySet());
+            aggregatable.forEach(e -> touched.add(e.targetUserId()));
+            notificationStreamService.publish(touched);
+
+            log.debug("Notification batch saved: {} plain, {} aggregatable", plain.size(), aggregatable.size());
+
+        } catch (DataIntegrityViolationException e) {
+            // 已知的数据错误 (例如校验之后用户/文章被删除，外键冲突)：重试也不会成功，放弃这一批
+            log.error("Notification batch of {} events violates a constraint, dropping it", events.size(), e);
+        }
+        // 其他异常 (连接断开、死锁、超时……) 直接抛出，由容器整批退避重试，耗尽后进入死信队列
+    }
+
+    /**
+     * 点赞类事件：批内按 (接收者, 类型, 文章) 合并，再用一条 INSERT ... ON CONFLICT 与库里同窗口的未读行合并
+     * 一篇爆款文章一小时内对作者只产生一行通知，而不是成千上万行
+     * 只有真正新插入的行才算一条新的未读，合并进已有未读行的不改变未读数
+     */
+    private void upsertAggregated(List<NotificationEvent> events, Instant now, Map<Long, Long> newUnread) {
+        if (events.isEmpty()) return;
+
+        Map<AggregateKey, AggregateGroup> groups = new LinkedHashMap<>();
+        for (NotificationEvent event : events) {
+            groups.computeIfAbsent(new AggregateKey(event.targetUserId(), event.type(), event.resourceId()),
+                    k -> new AggregateGroup()).add(event);
+        }
+
+        int size = groups.size();
+        Long[] targets = new Long[size];
+        Long[] actors = new Long[size];
+        String[] types = new String[size];
+        Long[] resources = new Long[size];
+        String[] slugs = new String[size];
+        Integer[] counts = new Integer[size];
+        String[] recents = new String[size];
+        int i = 0;
+        for (Map.Entry<AggregateKey, AggregateGroup> entry : groups.entrySet()) {
+            AggregateKey key = entry.getKey();
+            AggregateGroup group = entry.getValue();
+            targets[i] = key.targetUserId();
+            actors[i] = group.actors.getFirst();
+            types[i] = key.type().name();
+            resources[i] = key.resourceId();
+            slugs[i] = group.resourceSlug;
+            counts[i] = group.distinctActors.size();
+            recents[i] = group.actors.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}"));
+            i++;
+        }
 
-            // 4. 设置基本信息
-            notification.setEventType(event.type());
-            notification.setResourceId(event.resourceId());
-            notification.setResourceSlug(event.resourceSlug());
-
-            // 5. 设置附加内容 (例如：审核拒绝的原因)
-            // 请确保你的 Notification 实体已经添加了 `private String content;` 字段
-            notification.setContent(event.payload());
-
-            notification.setRead(false);
-
-            // 6. 持久化到 PostgreSQL
-            notificationRepository.save(notification);
-
-            log.debug("Notification saved successfully for user: {}", event.targetUserId());
-
-        } catch (jakarta.persistence.EntityNotFoundException e) {
-            // 如果因为用户已被物理删除导致找不到 User 实体
-            log.warn("User not found for notification (target={} or actor={}), dropping message.",
-                    event.targetUserId(), event.actorId());
-            // 我们捕获此异常并不抛出，相当于确认消费，让消息移出队列
-        } catch (Exception e) {
-            // 捕获其他不可预知的异常
-            log.error("Failed to process notification event: {}", event, e);
-            // 如果你想利用 RabbitMQ 的重试机制 (Retry)，这里应该 throw e;
-            // 如果不想重试（认为是不可恢复的 bug），则 swallow 异常
-            // 建议：对于非逻辑错误（如 DB 连接断开），最好 throw e
+        long window = now.getEpochSecond() / AGGREGATE_WINDOW_SECONDS;
+        List<Long> insertedFor = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(UPSERT_AGGREGATED_SQL);
+            ps.setTimestamp(1, Timestamp.from(now));
+            ps.setLong(2, window);
+            ps.setArray(3, con.createArrayOf("bigint", targets));
+            ps.setArray(4, con.createArrayOf("bigint", actors));
+            ps.setArray(5, con.createArrayOf("text", types));
+            ps.setArray(6, con.createArrayOf("bigint", resources));
+            ps.setArray(7, con.createArrayOf("text", slugs));
+            ps.setArray(8, con.createArrayOf("integer", counts));
+            ps.setArray(9, con.createArrayOf("text", recents));
+            return ps;
+        }, (rs, rowNum) -> rs.getBoolean("inserted") ? rs.getLong("target_user_id") : null);
+
+        long newRows = 0;
+        for (Long userId : insertedFor) {
+            if (userId == null) continue;
+            newUnread.merge(userId, 1L, Long::sum);
+            newRows++;
         }
+        log.debug("Aggregated {} events into {} notifications ({} new, {} merged)",
+                events.size(), size, newRows, size - newRows);
     }
-}
\ No newline at end of file
+}
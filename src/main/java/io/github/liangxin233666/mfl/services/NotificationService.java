@@ -13,7 +13,8 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,10 +22,15 @@ public class NotificationService {
 
     private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
+    private final UnreadCounter unreadCounter;
+    private final NotificationStreamService notificationStreamService;
 
-    public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository) {
+    public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository,
+                               UnreadCounter unreadCounter, NotificationStreamService notificationStreamService) {
         this.notificationRepository = notificationRepository;
         this.userRepository = userRepository;
+        this.unreadCounter = unreadCounter;
+        this.notificationStreamService = notificationStreamService;
     }
 
     // 1. 获取通知列表
@@ -34,18 +40,25 @@ public class NotificationService {
 
         Page<Notification> page = notificationRepository.findByTargetUserIdOrderByCreatedAtDesc(currentUser.getId(), pageable);
 
+        // 聚合通知的"最近触发者"一次批量查出，避免逐条加载
+        Set<Long> recentActorIds = page.getContent().stream()
+                .filter(n -> n.getRecentActorIds() != null)
+                .flatMap(n -> Arrays.stream(n.getRecentActorIds()))
+                .collect(Collectors.toSet());
+        Map<Long, User> recentActors = recentActorIds.isEmpty() ? Map.of()
+                : userRepository.findAllById(recentActorIds).stream()
+                        .collect(Collectors.toMap(User::getId, Function.identity()));
+
         List<NotificationResponse> dtos = page.getContent().stream()
-                .map(this::mapToDto)
+                .map(n -> mapToDto(n, recentActors))
                 .collect(Collectors.toList());
 
         return new MultipleNotificationsResponse(dtos, page.getTotalElements());
     }
 
-    // 2. 获取未读数量
-    @Transactional(readOnly = true)
+    // 2. 获取未读数量 (前端高频轮询：直接读 Redis 计数，token 里就是用户 ID，不再查 users 表)
     public long getUnreadCount(UserDetails currentUserDetails) {
-        User currentUser = findUserByDetails(currentUserDetails);
-        return notificationRepository.countByTargetUserIdAndIsReadFalse(currentUser.getId());
+        return unreadCounter.get(Long.valueOf(currentUserDetails.getUsername()));
     }
 
     // 3. 标记单个通知为已读
@@ -60,8 +73,12 @@ public class NotificationService {
             throw new AccessDeniedException("Not your notification");
         }
 
-        notification.setRead(true);
-        notificationRepository.save(notification);
+        // 条件更新：只有这次真正从未读变成已读才扣减计数，重复点击不会扣两次
+        if (notificationRepository.markAsRead(notificationId) > 0) {
+            unreadCounter.increment(currentUser.getId(), -1);
+            // 同一用户的其他标签页同步刷新小红点
+            notificationStreamService.publish(List.of(currentUser.getId()));
+        }
     }
 
     // 4. 标记全部为已读
@@ -73,6 +90,8 @@ public class NotificationService {
         // 这一行代码会直接翻译成 SQL:
         // UPDATE notifications SET is_read=true WHERE target_user_id=? AND is_read=false
         notificationRepository.markAllAsRead(currentUser.getId());
+        unreadCounter.reset(currentUser.getId());
+        notificationStreamService.publish(List.of(currentUser.getId()));
     }
 
     // --- Helpers ---
@@ -82,7 +101,14 @@ public class NotificationService {
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
     }
 
-    private NotificationResponse mapToDto(Notification n) {
+    private NotificationResponse mapToDto(Notification n, Map<Long, User> recentActors) {
+        List<NotificationResponse.ActorDto> recent = n.getRecentActorIds() == null ? List.of()
+                : Arrays.stream(n.getRecentActorIds())
+                        .map(recentActors::get)
+                        .filter(Objects::nonNull)
+                        .map(u -> new NotificationResponse.ActorDto(u.getUsername(), u.getImage()))
+                        .toList();
+
         return new NotificationResponse(
                 n.getId(),
                 new NotificationResponse.ActorDto(n.getActor().getUsername(), n.getActor().getImage()),
@@ -90,7 +116,9 @@ public class NotificationService {
                 new NotificationResponse.ResourceDto(n.getResourceId(), n.getResourceSlug()),
                 n.isRead(),
                 n.getCreatedAt(),
-                n.getContent()
+                n.getContent(),
+                n.getAggregateCount(),
+                recent
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package io.github.liangxin233666.mfl.services;
+
+import io.github.liangxin233666.mfl.utils.TransactionHooks;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 通知实时推送 (SSE)，替代前端对 /api/notifications 与 /count 的轮询
+ * 每条连接一个虚拟线程负责写出：空闲时停在队列上几乎不占资源，慢客户端只阻塞自己的写线程。
+ * 多实例部署时，通知可能在 A 实例落库、连接却在 B 实例上，所以经 Redis Pub/Sub 广播"哪些用户有变化"，
+ * 每个实例只推给本机持有的连接。
+ *
+ * 推送内容只有最新未读数 (event: unread)；前端收到后按需再拉列表。
+ * 写队列满 (客户端跟不上) 时丢弃积压、只发一条 resync，让客户端自己重新拉一次，不在内存里无限堆积。
+ */
+@Slf4j
+@Service
+public class NotificationStreamService implements MessageListener {
+
+    public static final String CHANNEL = "notif:push";
+
+    // 连接最长存活时间，到期后客户端 EventSource 会自动重连
+    private static final long EMITTER_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    // 心跳间隔：低于常见代理/负载均衡 60s 的空闲超时
+    private static final long HEARTBEAT_SECONDS = 25;
+    // 单连接写队列上限
+    private static final int MAX_QUEUED_EVENTS = 16;
+    // 单用户最多同时打开的连接 (多标签页)，超出时关闭最早的
+    private static final int MAX_CONNECTIONS_PER_USER = 5;
+
+    private final StringRedisTemplate redisTemplate;
+    private final UnreadCounter unreadCounter;
+
+    // userId -> 本实例上的连接 (按建立顺序)
+    private final ConcurrentHashMap<Long, Deque<Connection>> connections = new ConcurrentHashMap<>();
+
+    /**
+     * 单条 SSE 连接：未读数先进有界队列，再由专属虚拟线程构造事件并写出
+     * (SseEventBuilder 有状态且非线程安全，不能在多个连接间共享，所以队列里只放数值)
+     */
+    private final class Connection {
+        private final Long userId;
+        private final SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        private final BlockingQueue<Long> queue = new ArrayBlockingQueue<>(MAX_QUEUED_EVENTS);
+        private final AtomicBoolean overflowed = new AtomicBoolean(false);
+        private volatile boolean closed = false;
+        private Thread writer;
+
+        private Connection(Long userId) {
+            this.userId = userId;
+        }
+
+        private void start() {
+            writer = Thread.ofVirtual().name("sse-" + userId).start(this::writeLoop);
+        }
+
+        private void offer(long unreadCount) {
+            if (closed) return;
+            if (!queue.offer(unreadCount)) {
+                // 背压：客户端跟不上，清空积压，由写线程补发一条 resync
+                queue.clear();
+                overflowed.set(true);
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                while (!closed) {
+                    Long unreadCount = queue.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                    if (overflowed.getAndSet(false)) {
+                        emitter.send(SseEmitter.event().name("resync").data("{}"));
+                    }
+                    if (unreadCount != null) {
+                        emitter.send(unreadEvent(unreadCount));
+                    } else {
+                        // 注释行心跳，客户端不会触发事件，只用来保活和探测断连
+                        emitter.send(SseEmitter.event().comment("ping"));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // 客户端断开时 send 抛 IOException，属于正常现象
+                log.debug("SSE 连接断开: userId={}, {}", userId, e.getMessage());
+                emitter.completeWithError(e);
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            if (closed) return;
+            closed = true;
+            remove(this);
+            if (writer != null && writer != Thread.currentThread()) {
+                writer.interrupt();
+            }
+        }
+    }
+
+    public NotificationStreamService(StringRedisTemplate redisTemplate, UnreadCounter unreadCounter) {
+        this.redisTemplate = redisTemplate;
+        this.unreadCounter = unreadCounter;
+    }
+
+    /**
+     * 建立一条 SSE 连接，并立即推送一次当前未读数
+     */
+    public SseEmitter subscribe(Long userId) {
+        Connection connection = new Connection(userId);
+        connection.emitter.onCompletion(connection::close);
+        connection.emitter.onTimeout(connection::close);
+        connection.emitter.onError(e -> connection.close());
+
+        // compute 对单个 key 原子，和 remove() 的 computeIfPresent 互斥，不会把连接挂到已被移除的队列上
+        List<Connection> evicted = new ArrayList<>(1);
+        connections.compute(userId, (id, userConnections) -> {
+            if (userConnections == null) userConnections = new ConcurrentLinkedDeque<>();
+            userConnections.addLast(connection);
+            if (userConnections.size() > MAX_CONNECTIONS_PER_USER) {
+                evicted.add(userConnections.pollFirst());
+            }
+            return userConnections;
+        });
+        evicted.forEach(old -> {
+            old.close();
+            old.emitter.complete();
+        });
+
+        connection.offer(unreadCounter.get(userId));
+        connection.start();
+        return connection.emitter;
+    }
+
+    /**
+     * 通知这些用户"有变化"：事务提交后广播到所有实例
+     */
+    public void publish(Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) return;
+        String message = userIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        TransactionHooks.afterCommit(() -> {
+            try {
+                redisTemplate.convertAndSend(CHANNEL, message);
+            } catch (Exception e) {
+                // 推送是尽力而为，客户端重连或刷新时仍会拿到正确未读数
+                log.warn("发布通知推送失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Redis Pub/Sub 回调：只处理本实例持有连接的用户
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        for (String part : body.split(",")) {
+            Long userId;
+            try {
+                userId = Long.valueOf(part.trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Deque<Connection> userConnections = connections.get(userId);
+            if (userConnections == null || userConnections.isEmpty()) continue;
+
+            long unreadCount = unreadCounter.get(userId);
+            userConnections.forEach(c -> c.offer(unreadCount));
+        }
+    }
+
+    public int connectionCount() {
+        return connections.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        log.info("【通知推送】应用关闭，断开 {} 条 SSE 连接", connectionCount());
+        for (Deque<Connection> userConnections : connections.values()) {
+            for (Connection connection : userConnections) {
+                connection.close();
+                connection.emitter.complete();
+            }
+        }
+        connections.clear();
+    }
+
+    private void remove(Connection connection) {
+        connections.computeIfPresent(connection.userId, (id, userConnections) -> {
+            userConnections.remove(connection);
+            return userConnections.isEmpty() ? null : userConnections;
+        });
+    }
+
+    private static SseEmitter.SseEventBuilder unreadEvent(long count) {
+        return SseEmitter.event().name("unread").data(Map.of("count", count));
+    }
+}
@@ -4,7 +4,6 @@ import io.github.liangxin233666.mfl.dtos.ProfileResponse;
 import io.github.liangxin233666.mfl.entities.User;
 import io.github.liangxin233666.mfl.exceptions.ResourceNotFoundException;
 import io.github.liangxin233666.mfl.repositories.UserRepository;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -15,12 +14,15 @@ import org.springframework.transaction.annotation.Transactional;
 public class ProfileService {
 
     private final UserRepository userRepository;
+    private final FollowGraphService followGraphService;
 
-    public ProfileService(UserRepository userRepository) {
+    public ProfileService(UserRepository userRepository, FollowGraphService followGraphService) {
         this.userRepository = userRepository;
+        this.followGraphService = followGraphService;
     }
 
-    @Cacheable(value = "profiles", key = "#username")
+    // 不做缓存：following 因访问者而异，按 username 缓存会把第一个访问者的关注状态发给所有人；
+    // 用户查询走 username 唯一索引，关注判断是内存集合查找，本身就很便宜
     @Transactional(readOnly = true)
     public ProfileResponse getProfile(String username, UserDetails currentUserDetails) {
         User userToFind = findUserByUsername(username);
@@ -30,22 +32,20 @@ public class ProfileService {
             return buildProfileResponse(userToFind, false);
         }
 
-        // 如果是登录用户访问，需要判断是否已关注
-        User currentUser = findUserById(Long.valueOf(currentUserDetails.getUsername()));
-        boolean isFollowing = currentUser.getFollowing().contains(userToFind);
+        // 如果是登录用户访问，需要判断是否已关注 (查关注 ID 集合，不加载 following 实体集合)
+        boolean isFollowing = followGraphService.isFollowing(Long.valueOf(currentUserDetails.getUsername()), userToFind.getId());
         return buildProfileResponse(userToFind, isFollowing);
     }
 
     @Transactional
     public ProfileResponse followUser(String username, UserDetails currentUserDetails) {
         User userToFollow = findUserByUsername(username);
-        User currentUser = findUserById(Long.valueOf(currentUserDetails.getUsername()));
+        Long currentUserId = Long.valueOf(currentUserDetails.getUsername());
 
-        if(username.equals(currentUser.getUsername()))
+        if(userToFollow.getId().equals(currentUserId))
             return buildProfileResponse(userToFollow, false);
 
-        currentUser.getFollowing().add(userToFollow);
-        userRepository.save(currentUser);
+        followGraphService.follow(currentUserId, userToFollow.getId());
 
         return buildProfileResponse(userToFollow, true);
     }
@@ -53,10 +53,8 @@ public class ProfileService {
     @Transactional
     public ProfileResponse unfollowUser(String username, UserDetails currentUserDetails) {
         User userToUnfollow = findUserByUsername(username);
-        User currentUser = findUserById(Long.valueOf(currentUserDetails.getUsername()));
 
-        currentUser.getFollowing().remove(userToUnfollow);
-        userRepository.save(currentUser);
+        followGraphService.unfollow(Long.valueOf(currentUserDetails.getUsername()), userToUnfollow.getId());
 
         return buildProfileResponse(userToUnfollow, false);
     }
@@ -66,11 +64,6 @@ public class ProfileService {
                 .orElseThrow(() -> new ResourceNotFoundException("Profile not found for username: " + username));
     }
 
-    private User findUserById(Long id) {
-        return userRepository.findById(id)
-                .orElseThrow(() -> new  ResourceNotFoundException("User not found for id: " + id));
-    }
-
     private ProfileResponse buildProfileResponse(User user, boolean following) {
 
         ProfileResponse.ProfileDto profileDto = new ProfileResponse.ProfileDto(
@@ -0,0 +1,109 @@
+package io.github.liangxin233666.mfl.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.liangxin233666.mfl.utils.TransactionHooks;
+import io.github.liangxin233666.mfl.utils.VectorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 个性化推荐结果缓存：userId -> (当时的查询向量, top-N 文章 ID)
+ * 用户向量每看一篇文章只按 0.2 的 EMA 步长挪一点，刷新首页时绝大多数情况下向量几乎没动，没必要每次都跑 kNN。
+ *
+ * 1. 当前向量与缓存时的向量余弦距离 < MAX_DRIFT，且结果不超过 MAX_AGE：直接命中
+ * 2. 漂移过大或结果过旧：先返回旧结果，同时在虚拟线程里异步重算 (同一用户同时只有一个重算)
+ * 3. 没有缓存：同步计算；空结果 (ES 出错) 不缓存
+ * 文章被删除时，包含它的缓存结果整条丢弃。
+ */
+@Slf4j
+@Service
+public class RecommendationCache {
+
+    // 余弦距离阈值：1 - cos(θ)，0.02 约等于向量转过 11 度
+    private static final double MAX_DRIFT = 0.02;
+    // 即使向量没动，新发布的文章也要能进推荐
+    private static final Duration MAX_AGE = Duration.ofMinutes(15);
+    private static final long MAX_USERS = 100_000;
+
+    private record Entry(float[] queryVector, int limit, List<Long> ids, long createdAtMillis) {}
+
+    private final Cache<Long, Entry> cache = Caffeine.newBuilder()
+            .maximumSize(MAX_USERS)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    // 正在异步刷新的用户
+    private final Map<Long, Boolean> refreshing = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param loader 实际的推荐查询 (ES kNN / 本地索引)
+     */
+    public List<Long> get(Long userId, float[] userVector, int limit, Supplier<List<Long>> loader) {
+        float[] query = VectorUtils.normalize(userVector);
+        Entry entry = cache.getIfPresent(userId);
+
+        if (entry == null || entry.limit() != limit || query == null) {
+            misses.incrementAndGet();
+            return load(userId, query, limit, loader);
+        }
+
+        boolean fresh = System.currentTimeMillis() - entry.createdAtMillis() < MAX_AGE.toMillis();
+        double drift = 1.0 - VectorUtils.dot(entry.queryVector(), query);
+        if (fresh && drift < MAX_DRIFT) {
+            hits.incrementAndGet();
+            return entry.ids();
+        }
+
+        staleHits.incrementAndGet();
+        if (refreshing.putIfAbsent(userId, Boolean.TRUE) == null) {
+            Thread.ofVirtual().name("rec-refresh-" + userId).start(() -> {
+                try {
+                    load(userId, query, limit, loader);
+                } catch (Exception e) {
+                    log.warn("异步刷新推荐失败: userId={}, {}", userId, e.getMessage());
+                } finally {
+                    refreshing.remove(userId);
+                }
+            });
+        }
+        return entry.ids();
+    }
+
+    /**
+     * 文章删除时调用 (事务提交后生效)：丢掉所有包含该文章的缓存结果，下次访问同步重算
+     * 全量扫描，删除文章是低频操作，10 万条 × 16 个 ID 也只是毫秒级
+     */
+    public void removeArticle(Long articleId) {
+        TransactionHooks.afterCommit(() -> cache.asMap().values().removeIf(entry -> entry.ids().contains(articleId)));
+    }
+
+    private List<Long> load(Long userId, float[] query, int limit, Supplier<List<Long>> loader) {
+        List<Long> ids = loader.get();
+        if (query != null && !ids.isEmpty()) {
+            cache.put(userId, new Entry(query, limit, List.copyOf(ids), System.currentTimeMillis()));
+        }
+        return ids;
+    }
+
+    @Scheduled(fixedRate = 600000)
+    public void logStats() {
+        long hit = hits.get(), stale = staleHits.get(), miss = misses.get();
+        long total = hit + stale + miss;
+        if (total == 0) return;
+        log.info("【推荐缓存】条目: {} | 命中: {} | 过期后异步刷新: {} | 未命中: {} | 命中率: {}",
+                cache.estimatedSize(), hit, stale, miss, String.format("%.2f%%", (hit + stale) * 100.0 / total));
+    }
+}
@@ -4,15 +4,17 @@ import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch._types.SortOrder;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import io.github.liangxin233666.mfl.config.VectorSearchProperties;
 import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -21,9 +23,13 @@ public class RecommendationService {
 
 
     private final ElasticsearchClient esClient;
+    private final VectorSearchProperties vectorSearchProperties;
+    private final LocalVectorIndex localVectorIndex;
 
-    public RecommendationService(ElasticsearchClient esClient) {
+    public RecommendationService(ElasticsearchClient esClient, VectorSearchProperties vectorSearchProperties, LocalVectorIndex localVectorIndex) {
         this.esClient = esClient;
+        this.vectorSearchProperties = vectorSearchProperties;
+        this.localVectorIndex = localVectorIndex;
     }
 
     /**
@@ -33,21 +39,25 @@ public class RecommendationService {
     public List<Long> recommendForUser(float[] userVector, int limit) {
         if (userVector == null || userVector.length == 0) return Collections.emptyList();
         List<Float> queryVector = toFloatList(userVector);
+        // 本地索引可用时向 ES 多取一些候选，再做精确重排
+        boolean rerank = localVectorIndex.isReady();
+        int fetchSize = rerank ? limit * vectorSearchProperties.rerankOversample() : limit;
 
         try {
             log.info("【Debug】开始搜索，limit={}, 向量维度={}", limit, queryVector.size());
 
             SearchResponse<ArticleDocument> response = esClient.search(s -> s
-                            .index("articles")
+                            .index(ArticleDocument.READ_ALIAS)
                             .knn(k -> k
                                             .field("embeddingVector")
                                             .queryVector(queryVector)
-                                            .k(limit)
-                                            .numCandidates(100)
+                                            .k(fetchSize)
+                                            // 候选数随 k 缩放 (量化索引需要更多候选来弥补精度)
+                                            .numCandidates(vectorSearchProperties.numCandidates(fetchSize))
 
                             )
                             .source(src -> src.filter(f -> f.includes("id")))
-                            .size(limit),
+                            .size(fetchSize),
                     ArticleDocument.class
             );
 
@@ -75,12 +85,16 @@ public class RecommendationService {
                 }
             }
 
+            if (rerank) {
+                resultIds = localVectorIndex.rerank(userVector, resultIds, limit);
+            }
             log.info("【Debug】最终返回给 MySQL 的 ID 列表: {}", resultIds);
             return resultIds;
 
         } catch (Exception e) {
             log.error("【Debug】ES 查询报错: ", e);
-            return Collections.emptyList();
+            // ES 不可用时由本地索引直接给出精确结果
+            return localVectorIndex.isReady() ? localVectorIndex.search(userVector, limit, Set.of()) : Collections.emptyList();
         }
     }
 
@@ -98,7 +112,7 @@ public class RecommendationService {
 
         try {
             SearchResponse<ArticleDocument> response = esClient.search(s -> s
-                            .index("articles")
+                            .index(ArticleDocument.READ_ALIAS)
 
                             // 1. 向量部分 (语义相关) - 权重 0.5
                             .knn(k -> {
@@ -107,7 +121,7 @@ public class RecommendationService {
                                             .field("embeddingVector")
                                             .queryVector(queryVector)
                                             .k(limit)
-                                            .numCandidates(50)
+                                            .numCandidates(vectorSearchProperties.numCandidates(limit))
                                             .boost(0.5f) // 【关键修改】设置权重
                                             // 预过滤
                                             .filter(f -> f.bool(b -> b
@@ -123,7 +137,7 @@ public class RecommendationService {
                                     .bool(b -> b
                                             .must(m -> m.moreLikeThis(mlt -> mlt
                                                     .fields("title", "description", "originalTags")
-                                                    .like(l -> l.document(d -> d.index("articles").id(docId)))
+                                                    .like(l -> l.document(d -> d.index(ArticleDocument.READ_ALIAS).id(docId)))
                                                     .minTermFreq(1)
                                                     .minDocFreq(1)
                                             ))
@@ -143,10 +157,65 @@ public class RecommendationService {
 
             return extractIds(response);
 
-        } catch (IOException e) {
+        } catch (Exception e) {
 
             log.error("有错误 ",e);
-            return Collections.emptyList();
+            // 兜底只有向量相似，没有文本相关性部分
+            return vector != null && localVectorIndex.isReady()
+                    ? localVectorIndex.search(vector, limit, Set.of(sourceArticle.getId()))
+                    : Collections.emptyList();
+        }
+    }
+
+    /**
+     * 场景三: 冷启动 - 多向量检索
+     * 每个全网趋势中心一个 knn 子句，按权重分配名额 (至少 1 个) 并作为 boost，一次请求召回，
+     * 结果覆盖多个兴趣方向，而不是全部挤在一个平均向量附近。
+     */
+    public List<Long> recommendForTrends(List<GlobalTrendManager.TrendCentroid> trends, int limit) {
+        if (trends == null || trends.isEmpty()) return Collections.emptyList();
+        int[] quotas = new int[trends.size()];
+        for (int i = 0; i < trends.size(); i++) {
+            quotas[i] = Math.max(1, (int) Math.round(limit * trends.get(i).weight()));
+        }
+
+        try {
+            SearchResponse<ArticleDocument> response = esClient.search(s -> {
+                        for (int i = 0; i < trends.size(); i++) {
+                            GlobalTrendManager.TrendCentroid trend = trends.get(i);
+                            int quota = quotas[i];
+                            s.knn(k -> k
+                                    .field("embeddingVector")
+                                    .queryVector(toFloatList(trend.vector()))
+                                    .k(quota)
+                                    .numCandidates(vectorSearchProperties.numCandidates(quota))
+                                    .boost((float) trend.weight()));
+                        }
+                        return s
+                                .index(ArticleDocument.READ_ALIAS)
+                                .source(src -> src.filter(f -> f.includes("id")))
+                                .size(limit);
+                    },
+                    ArticleDocument.class
+            );
+            return extractIds(response);
+
+        } catch (Exception e) {
+            log.error("多向量冷启动检索失败", e);
+            if (!localVectorIndex.isReady()) return Collections.emptyList();
+
+            // 兜底：每个中心各自在本地索引里取自己的名额，按权重顺序轮流合并
+            List<List<Long>> perTrend = new ArrayList<>(trends.size());
+            for (int i = 0; i < trends.size(); i++) {
+                perTrend.add(localVectorIndex.search(trends.get(i).vector(), quotas[i], Set.of()));
+            }
+            LinkedHashSet<Long> merged = new LinkedHashSet<>();
+            for (int round = 0; merged.size() < limit && round < limit; round++) {
+                for (List<Long> ids : perTrend) {
+                    if (round < ids.size() && merged.size() < limit) merged.add(ids.get(round));
+                }
+            }
+            return new ArrayList<>(merged);
         }
     }
 
@@ -0,0 +1,237 @@
+package io.github.liangxin233666.mfl.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
+import io.github.liangxin233666.mfl.repositories.es.EsArticleRepository;
+import io.github.liangxin233666.mfl.utils.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 相关文章列表预计算
+ * 文章页每次打开都要 findBySlug + 一次 kNN + more_like_this 混合查询，而同一篇文章的答案很少变化。
+ * 现在文章发布时就算好它的相关列表 (顺带刷新它的邻居，让新文章进入它们的列表)，
+ * 以逗号拼接的 ID 串存进 Redis (related:<id>)，本地 Caffeine 再挡一层；没有缓存时才回源 ES，并把结果写回。
+ *
+ * 空列表也缓存 (值为空串)，但只保留 EMPTY_TTL，且不覆盖已有的非空列表：既挡住没有邻居的文章反复回源，
+ * 又不会让 ES 抖动时算出的空结果顶掉好数据。并发未命中由 Caffeine 合并成一次加载。
+ *
+ * 列表的寿命只由读取决定：Redis 命中时续期 TTL，重算 (定时 / 邻居刷新) 用 KEEPTTL 保留剩余寿命，
+ * 所以 TTL 内没人读的列表会自然过期，不会被后台任务无限续命。
+ * 计算时间记在有序集合 related:computed 里，每小时把超过 STALE_AFTER 的最旧一批重算一遍；
+ * 其中 key 已过期的直接移出集合、不再重算，定时任务的工作量只跟最近被读过的列表数有关。
+ * Redis 不可用时只当作未命中。
+ */
+@Slf4j
+@Service
+public class RelatedArticlesService {
+
+    public static final int LIST_SIZE = 6;
+
+    private static final String KEY_PREFIX = "related:";
+    private static final String COMPUTED_KEY = "related:computed";
+    // 最后一次 (穿透本地缓存的) 读取后 7 天内没人再看，列表自然过期
+    private static final Duration TTL = Duration.ofDays(7);
+    // 空结果可能是 ES 临时出错，短期缓存后重算
+    private static final Duration EMPTY_TTL = Duration.ofMinutes(10);
+    private static final Duration STALE_AFTER = Duration.ofHours(24);
+    private static final int REFRESH_BATCH = 500;
+    private static final Duration PUBLISH_REFRESH_DELAY = Duration.ofSeconds(2);
+
+    // 只覆盖仍然存在的列表并保留剩余 TTL (重算不续期)；key 已过期时把它移出 related:computed
+    private static final DefaultRedisScript<Long> REPLACE_IF_EXISTS = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                redis.call('SET', KEYS[1], ARGV[1], 'KEEPTTL')
+                redis.call('ZADD', KEYS[2], ARGV[2], ARGV[3])
+                return 1
+            end
+            redis.call('ZREM', KEYS[2], ARGV[3])
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final EsArticleRepository esArticleRepository;
+    private final RecommendationService recommendationService;
+
+    private final Cache<Long, List<Long>> local = Caffeine.newBuilder()
+            .maximumSize(20_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    public RelatedArticlesService(StringRedisTemplate redisTemplate, EsArticleRepository esArticleRepository,
+                                  RecommendationService recommendationService) {
+        this.redisTemplate = redisTemplate;
+        this.esArticleRepository = esArticleRepository;
+        this.recommendationService = recommendationService;
+    }
+
+    /**
+     * 读取相关文章 ID；本地 -> Redis -> ES 实时计算
+     */
+    public List<Long> getRelated(Long articleId) {
+        // 同一篇文章的并发未命中只执行一次 load，其余线程等待同一个结果
+        return local.get(articleId, this::load);
+    }
+
+    /**
+     * 文章发布 (已写入 ES) 后调用：异步算好它自己的列表，再刷新它的邻居 (只刷新已缓存的邻居列表)
+     */
+    public void refreshOnPublish(ArticleDocument doc) {
+        Thread.ofVirtual().name("related-" + doc.getId()).start(() -> {
+            try {
+                // 等 ES 刷新 (默认 1s)，否则邻居的 kNN 还看不到这篇新文章
+                Thread.sleep(PUBLISH_REFRESH_DELAY);
+                List<Long> neighbours = compute(doc);
+                writeRedis(doc.getId(), neighbours);
+                if (!neighbours.isEmpty()) local.put(doc.getId(), neighbours);
+                for (Long neighbourId : neighbours) {
+                    if (isCached(neighbourId)) {
+                        refreshExisting(esArticleRepository.findById(neighbourId).orElse(null));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("预计算相关文章失败: articleId={}, {}", doc.getId(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 文章删除时调用 (事务提交后生效)；其他文章列表里残留的该 ID 会在组装响应时被过滤掉
+     */
+    public void evict(Long articleId) {
+        TransactionHooks.afterCommit(() -> {
+            local.invalidate(articleId);
+            try {
+                redisTemplate.delete(KEY_PREFIX + articleId);
+                redisTemplate.opsForZSet().remove(COMPUTED_KEY, String.valueOf(articleId));
+            } catch (Exception e) {
+                log.warn("删除相关文章缓存失败: articleId={}, {}", articleId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 每小时重算一批最久没算过的列表；key 已过期 (TTL 内没人读) 的只移出集合，不再重算
+     */
+    @Scheduled(fixedDelay = 3600000, initialDelay = 300000)
+    public void refreshStale() {
+        double staleBefore = System.currentTimeMillis() - STALE_AFTER.toMillis();
+        Set<String> stale;
+        try {
+            stale = redisTemplate.opsForZSet().rangeByScore(COMPUTED_KEY, 0, staleBefore, 0, REFRESH_BATCH);
+        } catch (Exception e) {
+            log.warn("读取待刷新的相关文章列表失败: {}", e.getMessage());
+            return;
+        }
+        if (stale == null || stale.isEmpty()) return;
+
+        List<Long> ids = new ArrayList<>(stale.size());
+        List<String> expired = new ArrayList<>();
+        for (String member : stale) {
+            Long id = Long.valueOf(member);
+            if (isCached(id)) ids.add(id);
+            else expired.add(member);
+        }
+        if (!expired.isEmpty()) {
+            redisTemplate.opsForZSet().remove(COMPUTED_KEY, expired.toArray());
+        }
+
+        Map<Long, ArticleDocument> docs = new HashMap<>();
+        if (!ids.isEmpty()) {
+            esArticleRepository.findAllById(ids).forEach(doc -> docs.put(doc.getId(), doc));
+        }
+
+        int refreshed = 0;
+        for (Long id : ids) {
+            ArticleDocument doc = docs.get(id);
+            if (doc == null) {
+                // 文章已不在索引里
+                redisTemplate.opsForZSet().remove(COMPUTED_KEY, String.valueOf(id));
+                continue;
+            }
+            if (!refreshExisting(doc).isEmpty()) refreshed++;
+        }
+        log.info("【相关文章】定时刷新 {} / {} 篇，{} 篇已过期移出", refreshed, ids.size(), expired.size());
+    }
+
+    // 本地未命中时的加载：Redis -> ES 实时计算 (结果由 Caffeine 放入本地缓存，这里不能再写 local)
+    private List<Long> load(Long articleId) {
+        List<Long> cached = readRedis(articleId);
+        if (cached != null) return cached;
+        ArticleDocument doc = esArticleRepository.findById(articleId).orElse(null);
+        List<Long> ids = compute(doc);
+        if (doc != null && doc.getEmbeddingVector() != null) writeRedis(articleId, ids);
+        return ids;
+    }
+
+    // 后台重算 (定时 / 邻居刷新)：只覆盖 Redis 中仍存在的列表，不续期；空结果不覆盖任何已有列表
+    private List<Long> refreshExisting(ArticleDocument doc) {
+        List<Long> ids = compute(doc);
+        if (doc == null || ids.isEmpty()) return ids;
+        local.put(doc.getId(), ids);
+        try {
+            String id = String.valueOf(doc.getId());
+            redisTemplate.execute(REPLACE_IF_EXISTS, List.of(KEY_PREFIX + id, COMPUTED_KEY),
+                    join(ids), String.valueOf(System.currentTimeMillis()), id);
+        } catch (Exception e) {
+            log.warn("写入相关文章缓存失败: {}", e.getMessage());
+        }
+        return ids;
+    }
+
+    private List<Long> compute(ArticleDocument doc) {
+        if (doc == null || doc.getEmbeddingVector() == null) return List.of();
+        return List.copyOf(recommendationService.getRelatedArticles(doc, LIST_SIZE));
+    }
+
+    private boolean isCached(Long articleId) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(KEY_PREFIX + articleId));
+        } catch (Exception e) {
+            log.warn("检查相关文章缓存失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private List<Long> readRedis(Long articleId) {
+        try {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + articleId);
+            if (value == null) return null;
+            if (value.isEmpty()) return List.of();
+            // 有人读就续期 (空结果保持短 TTL，不续期)
+            redisTemplate.expire(KEY_PREFIX + articleId, TTL);
+            return Arrays.stream(value.split(",")).map(Long::valueOf).toList();
+        } catch (Exception e) {
+            log.warn("读取相关文章缓存失败，按未命中处理: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(Long articleId, List<Long> ids) {
+        try {
+            if (ids.isEmpty()) {
+                // 只在没有旧列表时写入；不记入 related:computed，过期后按需重算
+                redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + articleId, "", EMPTY_TTL);
+                return;
+            }
+            redisTemplate.opsForValue().set(KEY_PREFIX + articleId, join(ids), TTL);
+            redisTemplate.opsForZSet().add(COMPUTED_KEY, String.valueOf(articleId), System.currentTimeMillis());
+        } catch (Exception e) {
+            log.warn("写入相关文章缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private static String join(List<Long> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.liangxin233666.mfl.services;
+
+import io.github.liangxin233666.mfl.repositories.NotificationRepository;
+import io.github.liangxin233666.mfl.repositories.projections.UnreadCountView;
+import io.github.liangxin233666.mfl.utils.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Redis 未读通知计数器
+ * 前端小红点轮询 /api/notifications/count 只读一个 key，不再每次 COUNT 索引区间。
+ * 计数只在 key 已存在时增减 (Lua 保证原子)，key 缺失时由下一次读取从数据库懒加载，
+ * 所以 Redis 重启、key 过期都不会产生错误的计数；剩余的漂移 (比如进程在提交后、增减前崩溃) 由定时对账修复。
+ * Redis 不可用时直接回落到数据库 COUNT。
+ */
+@Slf4j
+@Service
+public class UnreadCounter {
+
+    private static final String KEY_PREFIX = "notif:unread:";
+    // 不活跃用户的 key 自然过期，对账只需要扫活跃用户
+    private static final Duration KEY_TTL = Duration.ofDays(3);
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    // key 存在才 INCRBY，并顺手续期；不存在返回 nil，等下次读取时从库里加载
+    private static final DefaultRedisScript<Long> INCR_IF_EXISTS = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                local v = redis.call('INCRBY', KEYS[1], ARGV[1])
+                if v < 0 then
+                    v = 0
+                    redis.call('SET', KEYS[1], 0)
+                end
+                redis.call('EXPIRE', KEYS[1], ARGV[2])
+                return v
+            end
+            return nil
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final NotificationRepository notificationRepository;
+
+    public UnreadCounter(StringRedisTemplate redisTemplate, NotificationRepository notificationRepository) {
+        this.redisTemplate = redisTemplate;
+        this.notificationRepository = notificationRepository;
+    }
+
+    /**
+     * 读取未读数：命中直接返回，未命中查库后回填
+     */
+    public long get(Long userId) {
+        String key = KEY_PREFIX + userId;
+        try {
+            String cached = redisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                return Math.max(0, Long.parseLong(cached));
+            }
+        } catch (Exception e) {
+            log.warn("读取未读计数失败，回落到数据库: {}", e.getMessage());
+            return notificationRepository.countByTargetUserIdAndIsReadFalse(userId);
+        }
+
+        long count = notificationRepository.countByTargetUserIdAndIsReadFalse(userId);
+        try {
+            // setIfAbsent：查库期间若已有别的线程回填，以先写入的为准
+            redisTemplate.opsForValue().setIfAbsent(key, String.valueOf(count), KEY_TTL);
+        } catch (Exception e) {
+            log.warn("回填未读计数失败: {}", e.getMessage());
+        }
+        return count;
+    }
+
+    /**
+     * 增减计数；在事务中调用时推迟到提交之后，回滚的写入不会影响计数
+     */
+    public void increment(Long userId, long delta) {
+        if (userId == null || delta == 0) return;
+        TransactionHooks.afterCommit(() -> {
+            try {
+                redisTemplate.execute(INCR_IF_EXISTS, List.of(KEY_PREFIX + userId),
+                        String.valueOf(delta), String.valueOf(KEY_TTL.toSeconds()));
+            } catch (Exception e) {
+                log.warn("更新未读计数失败 (等待对账修复): userId={}, delta={}, {}", userId, delta, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 批量增加：key 为用户 ID，value 为新增的未读行数
+     */
+    public void incrementAll(Map<Long, Long> deltas) {
+        deltas.forEach(this::increment);
+    }
+
+    /**
+     * 全部已读后直接置零
+     */
+    public void reset(Long userId) {
+        if (userId == null) return;
+        TransactionHooks.afterCommit(() -> {
+            try {
+                redisTemplate.opsForValue().set(KEY_PREFIX + userId, "0", KEY_TTL);
+            } catch (Exception e) {
+                log.warn("重置未读计数失败 (等待对账修复): userId={}, {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 定时对账：每 10 分钟扫一遍现存的计数 key，按批用一条 GROUP BY 查询重算并覆盖
+     * 查库与覆盖之间到达的新通知可能被覆盖掉一次，下一轮对账会再修正
+     */
+    @Scheduled(fixedDelay = 600000, initialDelay = 60000)
+    public void reconcile() {
+        int checked = 0;
+        int repaired = 0;
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions()
+                .match(KEY_PREFIX + "*").count(RECONCILE_BATCH_SIZE).build())) {
+            List<String> batch = new ArrayList<>(RECONCILE_BATCH_SIZE);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= RECONCILE_BATCH_SIZE) {
+                    repaired += reconcileBatch(batch);
+                    checked += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                repaired += reconcileBatch(batch);
+                checked += batch.size();
+            }
+            log.info("【未读计数】对账完成: 检查 {} 个, 修复 {} 个", checked, repaired);
+        } catch (Exception e) {
+            log.error("【未读计数】对账失败", e);
+        }
+    }
+
+    private int reconcileBatch(List<String> keys) {
+        Map<String, Long> userIdByKey = new LinkedHashMap<>();
+        for (String key : keys) {
+            try {
+                userIdByKey.put(key, Long.valueOf(key.substring(KEY_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                // 不是本服务写入的 key，忽略
+            }
+        }
+        if (userIdByKey.isEmpty()) return 0;
+
+        List<String> cachedKeys = new ArrayList<>(userIdByKey.keySet());
+        List<String> cachedValues = redisTemplate.opsForValue().multiGet(cachedKeys);
+        Map<Long, Long> actual = notificationRepository.countUnreadByTargetUserIds(userIdByKey.values()).stream()
+                .collect(Collectors.toMap(UnreadCountView::getUserId, UnreadCountView::getUnread));
+
+        int repaired = 0;
+        for (int i = 0; i < cachedKeys.size(); i++) {
+            String key = cachedKeys.get(i);
+            String cached = cachedValues == null ? null : cachedValues.get(i);
+            if (cached == null) continue; // 期间已过期，下次读取会懒加载
+
+            long expected = actual.getOrDefault(userIdByKey.get(key), 0L);
+            if (!String.valueOf(expected).equals(cached)) {
+                redisTemplate.opsForValue().set(key, String.valueOf(expected), KEY_TTL);
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+}
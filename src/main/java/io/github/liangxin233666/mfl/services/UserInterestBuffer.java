@@ -0,0 +1,171 @@
+package io.github.liangxin233666.mfl.services;
+
+import io.github.liangxin233666.mfl.repositories.UserRepository;
+import io.github.liangxin233666.mfl.repositories.projections.UserEmbeddingView;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 用户兴趣向量的写后缓冲 (Write-Behind)
+ * 每次浏览只在内存里记下 (userId -> articleId)，定时或积累到阈值后统一刷写：
+ * 文章向量走本地缓存 (未命中合并成一次 ES mget)，一次查询取所有用户旧向量，每个用户只 UPDATE 一次。
+ * 一分钟看 20 篇文章 = 1 次 ES 请求 + 1 次行更新，而不是 20 + 20。
+ */
+@Slf4j
+@Service
+public class UserInterestBuffer {
+
+    private final UserRepository userRepository;
+    private final ArticleEmbeddingCache articleEmbeddingCache;
+    private final UserService userService;
+    private final TransactionTemplate transactionTemplate;
+
+    // 总积压浏览数达到该值时立即触发一次异步刷写
+    private static final int FLUSH_THRESHOLD = 500;
+
+    // 每个用户最多保留最近 N 次浏览：EMA(0.2) 下第 20 次之前的贡献已不足 1%
+    private static final int MAX_VIEWS_PER_USER = 20;
+
+    // 关闭时等待正在进行的刷写结束的上限；以及最多再刷几轮 (关闭期间仍可能有请求写入)
+    private static final long SHUTDOWN_WAIT_MILLIS = 30_000;
+    private static final int SHUTDOWN_MAX_ROUNDS = 10;
+
+    // userId -> 按浏览顺序排列的文章 ID (只在 compute/remove 内修改，保证单 key 原子性)
+    private final ConcurrentHashMap<Long, List<Long>> pendingViews = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    public UserInterestBuffer(UserRepository userRepository, ArticleEmbeddingCache articleEmbeddingCache, UserService userService, TransactionTemplate transactionTemplate) {
+        this.userRepository = userRepository;
+        this.articleEmbeddingCache = articleEmbeddingCache;
+        this.userService = userService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * 记录一次浏览 (纯内存操作，可在请求线程直接调用)
+     */
+    public void recordView(Long userId, Long articleId) {
+        if (userId == null || articleId == null) return;
+
+        pendingViews.compute(userId, (id, views) -> {
+            if (views == null) views = new ArrayList<>();
+            if (views.size() >= MAX_VIEWS_PER_USER) {
+                views.remove(0);
+            } else {
+                pendingCount.incrementAndGet();
+            }
+            views.add(articleId);
+            return views;
+        });
+
+        if (pendingCount.get() >= FLUSH_THRESHOLD && !flushing.get()) {
+            Thread.ofVirtual().name("interest-flush").start(this::flush);
+        }
+    }
+
+    /**
+     * 定时刷写：每 30 秒一次
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 关闭前把内存里的积压全部落库
+     */
+    @PreDestroy
+    public void drainOnShutdown() {
+        log.info("【兴趣缓冲】应用关闭，刷写剩余 {} 条浏览记录", pendingCount.get());
+
+        // 定时/阈值刷写可能正在进行：flush() 此时会直接返回，所以这里等它结束后自己拿到刷写权
+        long deadline = System.currentTimeMillis() + SHUTDOWN_WAIT_MILLIS;
+        while (!flushing.compareAndSet(false, true)) {
+            if (System.currentTimeMillis() > deadline) {
+                log.warn("【兴趣缓冲】等待进行中的刷写超时，放弃剩余 {} 条浏览记录", pendingCount.get());
+                return;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        try {
+            // 那次刷写 drain() 之后进来的浏览还在缓冲里，循环刷到空为止
+            for (int round = 0; round < SHUTDOWN_MAX_ROUNDS && !pendingViews.isEmpty(); round++) {
+                flushPending();
+            }
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    public void flush() {
+        // 同一时间只允许一个刷写任务，避免同一用户被两个线程交错更新
+        if (!flushing.compareAndSet(false, true)) return;
+        try {
+            flushPending();
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    // 调用方需持有 flushing
+    private void flushPending() {
+        try {
+            Map<Long, List<Long>> batch = drain();
+            if (batch.isEmpty()) return;
+
+            // 1. 本地缓存取向量，未命中的合并成一次 ES mget
+            Set<Long> articleIds = new HashSet<>();
+            batch.values().forEach(articleIds::addAll);
+            Map<Long, float[]> articleVectors = articleEmbeddingCache.getAll(articleIds);
+            if (articleVectors.isEmpty()) return;
+
+            // 2. 一个事务里批量读旧向量 -> 折叠 EMA -> 每个用户只写一次
+            int updated = Objects.requireNonNull(transactionTemplate.execute(status -> {
+                int count = 0;
+                for (UserEmbeddingView view : userRepository.findEmbeddingsByIdIn(batch.keySet())) {
+                    List<float[]> vectors = batch.get(view.getId()).stream()
+                            .map(articleVectors::get)
+                            .filter(Objects::nonNull)
+                            .toList();
+                    if (vectors.isEmpty()) continue;
+
+                    byte[] newVec = userService.updateUserEmbedding(view.getEmbeddingVector(), vectors);
+                    count += userRepository.updateEmbeddingVector(view.getId(), newVec);
+                }
+                return count;
+            }));
+
+            log.debug("【兴趣缓冲】刷写完成: 用户 {} 个, 文章向量 {} 个", updated, articleVectors.size());
+        } catch (Exception e) {
+            // 兴趣向量是"尽力而为"的数据，失败只记录，不回灌，避免反复重试拖垮 ES/DB
+            log.error("【兴趣缓冲】刷写失败", e);
+        }
+    }
+
+    // 逐个 key 原子摘除，期间新到的浏览会进入新的 List，不会丢失
+    private Map<Long, List<Long>> drain() {
+        Map<Long, List<Long>> batch = new HashMap<>();
+        for (Long userId : pendingViews.keySet()) {
+            List<Long> views = pendingViews.remove(userId);
+            if (views != null && !views.isEmpty()) {
+                batch.put(userId, views);
+                pendingCount.addAndGet(-views.size());
+            }
+        }
+        return batch;
+    }
+}
@@ -5,6 +5,7 @@ import io.github.liangxin233666.mfl.entities.User;
 import io.github.liangxin233666.mfl.exceptions.ResourceNotFoundException;
 import io.github.liangxin233666.mfl.repositories.UserRepository;
 import io.github.liangxin233666.mfl.repositories.projections.UserSimpleView;
+import io.github.liangxin233666.mfl.utils.EmbeddingCodec;
 import jakarta.validation.Valid;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
@@ -30,15 +31,17 @@ public class UserService {
     private final JwtService jwtService;
     private final FileStorageService fileStorageService;
     private final GlobalTrendManager globalTrendManager;
+    private final FollowGraphService followGraphService;
 
 
     // 使用构造器注入所有依赖
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, JwtService jwtService, FileStorageService fileStorageService, GlobalTrendManager globalTrendManager) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, JwtService jwtService, FileStorageService fileStorageService, GlobalTrendManager globalTrendManager, FollowGraphService followGraphService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.jwtService = jwtService;
         this.fileStorageService = fileStorageService;
         this.globalTrendManager = globalTrendManager;
+        this.followGraphService = followGraphService;
     }
 
     @Transactional
@@ -56,7 +59,7 @@ public class UserService {
         newUser.setEmail(request.user().email());
         // 使用BCrypt加密密码
         newUser.setPassword(passwordEncoder.encode(request.user().password()));
-        newUser.setEmbeddingVector(serializeEmbedding(globalTrendManager.getGlobalHotVector()));
+        newUser.setEmbeddingVector(EmbeddingCodec.encode(globalTrendManager.getGlobalHotVector()));
 
         User savedUser = userRepository.save(newUser);
 
@@ -141,7 +144,7 @@ public class UserService {
                 .toList();
 
         // 批量检查我是否关注了这些粉丝 (是否互关)
-        Set<Long> myFollowingIds = userRepository.checkFollowingStatus(currentUserId, followerIds);
+        Set<Long> myFollowingIds = followGraphService.followingAmong(currentUserId, followerIds);
 
         List<ProfileResponse.ProfileDto> profiles = page.getContent().stream()
                 .map(view -> new ProfileResponse.ProfileDto(
@@ -157,7 +160,7 @@ public class UserService {
 
 
     @Transactional
-    @CacheEvict(cacheNames = {"profiles", "user-details", "users-current"}, key = "#currentUserDetails.username")
+    @CacheEvict(cacheNames = {"user-details", "users-current"}, key = "#currentUserDetails.username")
     public UserResponse updateCurrentUser(@Valid UpdateUserRequest request, UserDetails currentUserDetails) {
         User userToUpdate = findUserById(Long.valueOf(currentUserDetails.getUsername()));
 
@@ -210,13 +213,25 @@ public class UserService {
     }
 
     // 简单的向量加权平均
-    public String updateUserEmbedding(String oldEmbeddingStr, float[] newArticleVector) {
-        float[] oldVector = parseEmbedding(oldEmbeddingStr); // 字符串转float[]
-        if (oldVector == null) {
-            // 如果用户是新的，直接用当前文章向量作为初始兴趣
-            return serializeEmbedding(newArticleVector);
+    public byte[] updateUserEmbedding(byte[] oldEmbedding, float[] newArticleVector) {
+        return updateUserEmbedding(oldEmbedding, List.of(newArticleVector));
+    }
+
+    // 批量版本：按浏览顺序依次折叠多篇文章，只解码/编码一次 (供 UserInterestBuffer 合并写入使用)
+    public byte[] updateUserEmbedding(byte[] oldEmbedding, List<float[]> newArticleVectors) {
+        float[] vector = EmbeddingCodec.decode(oldEmbedding); // 字节直接解码为 float[]
+        for (float[] articleVector : newArticleVectors) {
+            if (vector == null || vector.length != articleVector.length) {
+                // 如果用户是新的，直接用当前文章向量作为初始兴趣
+                vector = articleVector.clone();
+            } else {
+                blendInto(vector, articleVector);
+            }
         }
+        return EmbeddingCodec.encode(vector);
+    }
 
+    private void blendInto(float[] oldVector, float[] newArticleVector) {
         // 移动平均: 0.8 旧兴趣 + 0.2 新兴趣
         float alpha = 0.2f;
         double sumSq = 0.0;
@@ -235,26 +250,5 @@ public class UserService {
                 oldVector[i] /= norm;
             }
         }
-
-        return serializeEmbedding(oldVector);
-    }
-
-    // 工具: String -> float[]
-    private float[] parseEmbedding(String str) {
-        if (str == null || str.isBlank()) return null;
-        String[] parts = str.split(",");
-        float[] res = new float[parts.length];
-        for(int i=0; i<parts.length; i++) res[i] = Float.parseFloat(parts[i]);
-        return res;
-    }
-
-    // 工具: float[] -> String
-    private String serializeEmbedding(float[] vec) {
-        StringBuilder sb = new StringBuilder();
-        for (int i=0; i<vec.length; i++) {
-            if (i > 0) sb.append(",");
-            sb.append(vec[i]);
-        }
-        return sb.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package io.github.liangxin233666.mfl.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+import io.github.liangxin233666.mfl.config.VectorSearchProperties;
+import io.github.liangxin233666.mfl.entities.es.ArticleDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * kNN 召回率 / 延迟基准
+ * 从当前索引随机抽取若干篇文章的向量作为查询，先用 script_score 做精确暴力检索得到真实 top-k，
+ * 再对每个候选倍数跑一遍 kNN，统计 recall@k 和 p50 / p95 延迟，用来给 numCandidatesFactor 和量化类型选值。
+ * 两种检索都排除查询向量所属的文章本身：它必然排第一，不排除的话每个查询都白送 1/k 的召回率。
+ *
+ * 通过 app.search.vector.benchmark-on-startup=true 在启动完成后于后台运行，结果打印在日志里。
+ */
+@Slf4j
+@Service
+public class VectorSearchBenchmark {
+
+    private static final String VECTOR_FIELD = "embeddingVector";
+    // cosineSimilarity 取值 [-1, 1]，script_score 不允许负分，+1 平移
+    private static final String EXACT_SCRIPT = "cosineSimilarity(params.query_vector, '" + VECTOR_FIELD + "') + 1.0";
+
+    private final ElasticsearchClient esClient;
+    private final VectorSearchProperties properties;
+
+    /**
+     * 一个候选倍数下的结果
+     */
+    public record Result(double factor, int numCandidates, double recall, double p50Millis, double p95Millis) {}
+
+    // 查询向量 + 它来自的文章 (ES 文档 id)
+    private record QueryVector(String sourceId, List<Float> vector) {}
+
+    public VectorSearchBenchmark(ElasticsearchClient esClient, VectorSearchProperties properties) {
+        this.esClient = esClient;
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void benchmarkOnStartup() {
+        if (!properties.benchmarkOnStartup()) return;
+        Thread.ofVirtual().name("knn-benchmark").start(() -> {
+            try {
+                run();
+            } catch (Exception e) {
+                log.error("【向量基准】运行失败", e);
+            }
+        });
+    }
+
+    public List<Result> run() throws IOException {
+        int k = properties.benchmarkK();
+        List<QueryVector> queries = sampleQueryVectors(properties.benchmarkQueries());
+        if (queries.isEmpty()) {
+            log.warn("【向量基准】索引中没有带向量的文章，跳过");
+            return List.of();
+        }
+
+        // 1. 精确 top-k (同时记录暴力检索的耗时作对照)
+        List<Set<String>> truth = new ArrayList<>(queries.size());
+        double[] exactMillis = new double[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            truth.add(exactTopK(queries.get(i), k));
+            exactMillis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        log.info("【向量基准】{} 个查询, k={}, 索引参数: {}, 精确检索 p50={}ms p95={}ms",
+                queries.size(), k, properties.indexOptions(),
+                format(percentile(exactMillis, 0.50)), format(percentile(exactMillis, 0.95)));
+
+        // 2. 各候选倍数下的 kNN
+        List<Result> results = new ArrayList<>();
+        for (double factor : properties.benchmarkFactors()) {
+            int numCandidates = Math.min(Math.max(k, (int) Math.ceil(k * factor)), VectorSearchProperties.MAX_NUM_CANDIDATES);
+            double[] millis = new double[queries.size()];
+            double recallSum = 0;
+            for (int i = 0; i < queries.size(); i++) {
+                long start = System.nanoTime();
+                List<String> hits = knnTopK(queries.get(i), k, numCandidates);
+                millis[i] = (System.nanoTime() - start) / 1e6;
+
+                Set<String> expected = truth.get(i);
+                long found = hits.stream().filter(expected::contains).count();
+                recallSum += expected.isEmpty() ? 1.0 : (double) found / expected.size();
+            }
+            Result result = new Result(factor, numCandidates, recallSum / queries.size(),
+                    percentile(millis, 0.50), percentile(millis, 0.95));
+            results.add(result);
+            log.info("【向量基准】factor={} numCandidates={} recall@{}={} p50={}ms p95={}ms",
+                    factor, numCandidates, k, format(result.recall()), format(result.p50Millis()), format(result.p95Millis()));
+        }
+        return results;
+    }
+
+    // ==========================================
+    // 查询
+    // ==========================================
+
+    private List<QueryVector> sampleQueryVectors(int size) throws IOException {
+        SearchResponse<ArticleDocument> response = esClient.search(s -> s
+                        .index(ArticleDocument.READ_ALIAS)
+                        .size(size)
+                        .query(q -> q.functionScore(fs -> fs
+                                .query(fq -> fq.exists(e -> e.field(VECTOR_FIELD)))
+                                .functions(f -> f.randomScore(r -> r))))
+                        .source(src -> src.filter(f -> f.includes("id", VECTOR_FIELD))),
+                ArticleDocument.class);
+
+        List<QueryVector> queries = new ArrayList<>();
+        for (Hit<ArticleDocument> hit : response.hits().hits()) {
+            if (hit.source() != null && hit.source().getEmbeddingVector() != null) {
+                queries.add(new QueryVector(hit.id(), toFloatList(hit.source().getEmbeddingVector())));
+            }
+        }
+        return queries;
+    }
+
+    private Set<String> exactTopK(QueryVector query, int k) throws IOException {
+        SearchResponse<Void> response = esClient.search(s -> s
+                        .index(ArticleDocument.READ_ALIAS)
+                        .size(k)
+                        .query(q -> q.scriptScore(ss -> ss
+                                .query(fq -> fq.bool(b -> b
+                                        .filter(f -> f.exists(e -> e.field(VECTOR_FIELD)))
+                                        .mustNot(mn -> mn.ids(i -> i.values(query.sourceId())))))
+                                .script(sc -> sc
+                                        .source(EXACT_SCRIPT)
+                                        .params("query_vector", JsonData.of(query.vector())))))
+                        .source(src -> src.fetch(false)),
+                Void.class);
+        Set<String> ids = new HashSet<>();
+        for (Hit<Void> hit : response.hits().hits()) ids.add(hit.id());
+        return ids;
+    }
+
+    private List<String> knnTopK(QueryVector query, int k, int numCandidates) throws IOException {
+        SearchResponse<Void> response = esClient.search(s -> s
+                        .index(ArticleDocument.READ_ALIAS)
+                        .knn(kn -> kn
+                                .field(VECTOR_FIELD)
+                                .queryVector(query.vector())
+                                .k(k)
+                                .numCandidates(numCandidates)
+                                // 预过滤，与精确检索排除同一篇
+                                .filter(f -> f.bool(b -> b
+                                        .mustNot(mn -> mn.ids(i -> i.values(query.sourceId()))))))
+                        .size(k)
+                        .source(src -> src.fetch(false)),
+                Void.class);
+        List<String> ids = new ArrayList<>(k);
+        for (Hit<Void> hit : response.hits().hits()) ids.add(hit.id());
+        return ids;
+    }
+
+    // ==========================================
+    // 统计
+    // ==========================================
+
+    private static double percentile(double[] values, double p) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String format(double value) {
+        return String.format("%.3f", value);
+    }
+
+    private static List<Float> toFloatList(float[] vector) {
+        List<Float> list = new ArrayList<>(vector.length);
+        for (float f : vector) list.add(f);
+        return list;
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.liangxin233666.mfl.services.gemini;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * 向量生成的微批聚合器
+ * 多个消费线程同时调用 embed()，这里把 MAX_WAIT_MILLIS 窗口内到达的文本 (最多 MAX_BATCH_SIZE 条)
+ * 合并成一次多文本 embed 请求，再把结果按顺序分发回各自等待的线程。
+ * 发布高峰时 API 调用次数和单篇延迟都会明显下降。
+ *
+ * 后端是一个 List<String> -> List<float[]> 的函数，测试时可以直接传入本地桩实现，不需要真实 Client。
+ */
+@Slf4j
+@Service
+public class EmbeddingBatcher {
+
+    // Gemini 单次 embed 请求最多 100 段，这里保守一些
+    private static final int MAX_BATCH_SIZE = 16;
+    // 首条到达后最多再等多久凑批
+    private static final long MAX_WAIT_MILLIS = 20;
+    // 同时在途的批次数：都在途时调度线程阻塞，队列自然积累成更大的批
+    private static final int MAX_IN_FLIGHT = 4;
+    // 调用方最长等待时间，超时抛异常交给 RabbitMQ 重试
+    private static final long CALL_TIMEOUT_SECONDS = 60;
+
+    private final Function<List<String>, List<float[]>> batchEmbedder;
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private volatile boolean running = false;
+    private Thread dispatcher;
+
+    private record PendingEmbedding(String text, CompletableFuture<float[]> future) {}
+
+    @Autowired
+    public EmbeddingBatcher(GeminiService geminiService) {
+        this(geminiService::generateEmbeddings);
+    }
+
+    public EmbeddingBatcher(Function<List<String>, List<float[]>> batchEmbedder) {
+        this.batchEmbedder = batchEmbedder;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatcher = Thread.ofVirtual().name("embedding-batcher").start(this::dispatchLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        // 还没发出去的请求直接失败，消息会回到队列等待下次重试
+        PendingEmbedding pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().completeExceptionally(new IllegalStateException("EmbeddingBatcher is shutting down"));
+        }
+    }
+
+    /**
+     * 阻塞直到本条文本所在的批次返回
+     */
+    public float[] embed(String text) {
+        if (!running) {
+            throw new IllegalStateException("EmbeddingBatcher is not running");
+        }
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        queue.add(new PendingEmbedding(text, future));
+        try {
+            return future.get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for embedding", e);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new RuntimeException("Embedding generation timed out", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException("Embedding generation failed", e.getCause());
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                PendingEmbedding first = queue.take();
+                List<PendingEmbedding> batch = new ArrayList<>(MAX_BATCH_SIZE);
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    PendingEmbedding next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                // 窗口结束后顺手把已经排队的也带上
+                queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+
+                inFlight.acquire();
+                Thread.ofVirtual().name("embedding-batch").start(() -> {
+                    try {
+                        dispatch(batch);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void dispatch(List<PendingEmbedding> batch) {
+        // 调用方已超时放弃的就不再发送
+        List<PendingEmbedding> live = batch.stream().filter(p -> !p.future().isDone()).toList();
+        if (live.isEmpty()) return;
+
+        try {
+            List<float[]> vectors = batchEmbedder.apply(live.stream().map(PendingEmbedding::text).toList());
+            if (vectors == null || vectors.size() != live.size()) {
+                throw new IllegalStateException("Embedding batch size mismatch: expected " + live.size()
+                        + ", got " + (vectors == null ? 0 : vectors.size()));
+            }
+            for (int i = 0; i < live.size(); i++) {
+                live.get(i).future().complete(vectors.get(i));
+            }
+            log.debug("向量批次完成，本批 {} 条", live.size());
+        } catch (Exception e) {
+            // 整批失败：每个调用方各自抛异常，由 RabbitMQ 重试拦截器单独重试
+            log.error("向量批次失败，本批 {} 条", live.size(), e);
+            live.forEach(p -> p.future().completeExceptionally(e));
+        }
+    }
+}
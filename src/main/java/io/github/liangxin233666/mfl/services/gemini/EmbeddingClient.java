@@ -0,0 +1,13 @@
+package io.github.liangxin233666.mfl.services.gemini;
+
+import java.util.List;
+
+/**
+ * 向量模型的最小调用端口：一次请求带多段非空文本，按入参顺序返回向量
+ * 生产环境由 GeminiEmbeddingClient 调用 Gemini SDK；测试里换成本地桩，不需要网络和 API Key。
+ */
+@FunctionalInterface
+public interface EmbeddingClient {
+
+    List<float[]> embed(String model, int dimensions, List<String> texts);
+}
@@ -0,0 +1,52 @@
+package io.github.liangxin233666.mfl.services.gemini;
+
+import com.google.genai.Client;
+import com.google.genai.types.ContentEmbedding;
+import com.google.genai.types.EmbedContentConfig;
+import com.google.genai.types.EmbedContentResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EmbeddingClient 的 Gemini SDK 实现
+ */
+@Component
+public class GeminiEmbeddingClient implements EmbeddingClient {
+
+    private final Client client;
+
+    public GeminiEmbeddingClient(Client client) {
+        this.client = client;
+    }
+
+    @Override
+    public List<float[]> embed(String model, int dimensions, List<String> texts) {
+        // 1. 配置：指定输出维度
+        EmbedContentConfig config = EmbedContentConfig.builder()
+                .outputDimensionality(dimensions)
+                .build();
+
+        // 2. 调用 SDK：List<String> 重载会把多段文本放进同一个请求
+        EmbedContentResponse response = client.models.embedContent(model, texts, config);
+
+        // 3. 解析结果：注意处理 Optional 和 List
+        List<ContentEmbedding> embeddings = response.embeddings()
+                .orElseThrow(() -> new RuntimeException("Gemini API returned empty embeddings"));
+
+        List<float[]> vectors = new ArrayList<>(embeddings.size());
+        for (ContentEmbedding embedding : embeddings) {
+            // 获取具体的向量值 (List<Float>)
+            List<Float> values = embedding.values()
+                    .orElseThrow(() -> new RuntimeException("Failed to generate embedding"));
+
+            float[] vector = new float[values.size()];
+            for (int j = 0; j < values.size(); j++) {
+                vector[j] = values.get(j);
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+}
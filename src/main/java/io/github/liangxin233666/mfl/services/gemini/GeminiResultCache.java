@@ -0,0 +1,127 @@
+package io.github.liangxin233666.mfl.services.gemini;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.liangxin233666.mfl.utils.EmbeddingCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Gemini 结果去重缓存：按内容哈希缓存审核结果和向量
+ * 重试拦截器的重投、标题正文没变的重新编辑，都不用再等几秒的模型调用。
+ * L1 为本地 Caffeine，L2 为 Redis (多实例共享)；Redis 不可用时只当作未命中，不影响主流程。
+ */
+@Slf4j
+@Component
+public class GeminiResultCache {
+
+    private static final String AUDIT_PREFIX = "gemini:audit:";
+    private static final String EMBED_PREFIX = "gemini:embed:";
+    private static final Duration AUDIT_TTL = Duration.ofDays(7);
+    private static final Duration EMBED_TTL = Duration.ofDays(30);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Cache<String, GeminiService.AnalysisResult> auditL1 = Caffeine.newBuilder()
+            .maximumSize(2_000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+    private final Cache<String, float[]> embeddingL1 = Caffeine.newBuilder()
+            .maximumSize(5_000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+
+    public GeminiResultCache(StringRedisTemplate redisTemplate, ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * SHA-256(各部分以 \0 分隔)，调用方负责把模型名、Prompt 版本等都放进来
+     */
+    public static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                if (part != null) digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // --- 审核结果 ---
+
+    public GeminiService.AnalysisResult getAudit(String key) {
+        GeminiService.AnalysisResult local = auditL1.getIfPresent(key);
+        if (local != null) return local;
+
+        try {
+            String json = redisTemplate.opsForValue().get(AUDIT_PREFIX + key);
+            if (json == null) return null;
+            GeminiService.AnalysisResult result = objectMapper.readValue(json, GeminiService.AnalysisResult.class);
+            auditL1.put(key, result);
+            return result;
+        } catch (Exception e) {
+            log.warn("读取审核缓存失败，按未命中处理: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public void putAudit(String key, GeminiService.AnalysisResult result) {
+        auditL1.put(key, result);
+        try {
+            redisTemplate.opsForValue().set(AUDIT_PREFIX + key, objectMapper.writeValueAsString(result), AUDIT_TTL);
+        } catch (Exception e) {
+            log.warn("写入审核缓存失败: {}", e.getMessage());
+        }
+    }
+
+    // --- 向量 (Redis 中存 Base64 编码的小端 float32) ---
+
+    /**
+     * 批量查询，返回 key -> 向量，未命中的 key 不在结果中
+     */
+    public Map<String, float[]> getEmbeddings(List<String> keys) {
+        Map<String, float[]> hits = new HashMap<>(embeddingL1.getAllPresent(keys));
+        List<String> misses = keys.stream().filter(k -> !hits.containsKey(k)).distinct().toList();
+        if (misses.isEmpty()) return hits;
+
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(misses.stream().map(k -> EMBED_PREFIX + k).toList());
+            if (values == null) return hits;
+            for (int i = 0; i < misses.size(); i++) {
+                String value = values.get(i);
+                if (value == null) continue;
+                float[] vector = EmbeddingCodec.decode(Base64.getDecoder().decode(value));
+                if (vector != null) {
+                    hits.put(misses.get(i), vector);
+                    embeddingL1.put(misses.get(i), vector);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取向量缓存失败，按未命中处理: {}", e.getMessage());
+        }
+        return hits;
+    }
+
+    public void putEmbedding(String key, float[] vector) {
+        embeddingL1.put(key, vector);
+        try {
+            redisTemplate.opsForValue().set(EMBED_PREFIX + key, Base64.getEncoder().encodeToString(EmbeddingCodec.encode(vector)), EMBED_TTL);
+        } catch (Exception e) {
+            log.warn("写入向量缓存失败: {}", e.getMessage());
+        }
+    }
+}
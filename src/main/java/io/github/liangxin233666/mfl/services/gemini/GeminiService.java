@@ -2,13 +2,15 @@ package io.github.liangxin233666.mfl.services.gemini;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.genai.Client;
-import com.google.genai.types.*; // 包含 EmbedContentConfig, EmbedContentResponse, ContentEmbedding 等
+import com.google.genai.types.GenerateContentResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
 
 @Slf4j
 @Service
@@ -19,13 +21,19 @@ public class GeminiService {
     private final ObjectMapper objectMapper;
     private static final String MODEL_NAME = "gemini-2.5-flash-lite"; // 追求速度就用 flash
     private static final String EMBEDDING_MODEL = "gemini-embedding-001";
-    private final String apiKey;
+    private static final int EMBEDDING_DIMENSIONS = 768;
+    // 审核 Prompt 模板版本号：修改下方 Prompt 时必须 +1，否则会命中旧模板的缓存结果
+    private static final String AUDIT_PROMPT_VERSION = "v1";
     private final Client client;
+    // 向量请求单独走 EmbeddingClient，测试时可以换成本地桩
+    private final EmbeddingClient embeddingClient;
+    private final GeminiResultCache resultCache;
 
-    public GeminiService(@Value("${gemini.api.key}") String apiKey, ObjectMapper objectMapper) {
-        this.apiKey = apiKey;
+    public GeminiService(Client client, EmbeddingClient embeddingClient, ObjectMapper objectMapper, GeminiResultCache resultCache) {
+        this.client = client;
+        this.embeddingClient = embeddingClient;
         this.objectMapper = objectMapper;
-        this.client = Client.builder().apiKey(this.apiKey).build();
+        this.resultCache = resultCache;
     }
 
 
@@ -42,6 +50,15 @@ public class GeminiService {
      * 核心审核方法
      */
     public AnalysisResult auditArticle(String title, String body, String coverUrl) {
+        String truncatedBody = body.length() > 4000 ? body.substring(0, 4000) : body;
+
+        // 0. 内容哈希去重：重试、重复提交、标题正文未变的编辑都直接复用上次结果
+        String cacheKey = GeminiResultCache.hash(MODEL_NAME, AUDIT_PROMPT_VERSION, title, truncatedBody);
+        AnalysisResult cached = resultCache.getAudit(cacheKey);
+        if (cached != null) {
+            log.info("命中审核缓存，跳过模型调用");
+            return cached;
+        }
 
         // 1. 构造 Prompt。和之前一样，我们需要 AI 返回严谨的 JSON。
         // 精心设计的中文提示词
@@ -88,7 +105,7 @@ public class GeminiService {
           "keywords": [],
           "reason": "违反相关法律，包含露骨R18色情描写。"
         }
-        """.formatted(title, body.length() > 4000 ? body.substring(0, 4000) : body);
+        """.formatted(title, truncatedBody);
 
         try {
 
@@ -116,7 +133,9 @@ public class GeminiService {
             }
 
             // 4. 解析结果
-            return objectMapper.readValue(jsonText, AnalysisResult.class);
+            AnalysisResult result = objectMapper.readValue(jsonText, AnalysisResult.class);
+            resultCache.putAudit(cacheKey, result);
+            return result;
 
         } catch (Exception e) {
             // 这里既包含了网络错误，也包含了 JSON 解析错误
@@ -127,46 +146,58 @@ public class GeminiService {
     }
 
     public float[] generateEmbedding(String text) {
-        if (text == null || text.isBlank()) {
-            return new float[768]; // 或者返回 null，视业务需要
+        return generateEmbeddings(List.of(text == null ? "" : text)).get(0);
+    }
+
+    /**
+     * 批量生成向量：一次请求带多段文本，结果顺序与入参一一对应
+     * 空文本不占用请求名额，直接返回零向量
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        float[][] results = new float[texts.size()][];
+        List<String> requestTexts = new ArrayList<>();
+        List<Integer> requestIndexes = new ArrayList<>();
+
+        // 先按 (模型, 维度, 文本) 哈希查去重缓存，只有未命中的才发给 API
+        String[] cacheKeys = new String[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            if (text != null && !text.isBlank()) {
+                cacheKeys[i] = GeminiResultCache.hash(EMBEDDING_MODEL, String.valueOf(EMBEDDING_DIMENSIONS), text);
+            }
+        }
+        Map<String, float[]> cachedVectors = resultCache.getEmbeddings(
+                Arrays.stream(cacheKeys).filter(Objects::nonNull).toList());
+
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            if (text == null || text.isBlank()) {
+                results[i] = new float[EMBEDDING_DIMENSIONS]; // 或者返回 null，视业务需要
+            } else if (cachedVectors.containsKey(cacheKeys[i])) {
+                results[i] = cachedVectors.get(cacheKeys[i]);
+            } else {
+                requestTexts.add(text);
+                requestIndexes.add(i);
+            }
+        }
+        if (requestTexts.isEmpty()) {
+            return Arrays.asList(results);
         }
 
         try {
+            List<float[]> vectors = embeddingClient.embed(EMBEDDING_MODEL, EMBEDDING_DIMENSIONS, requestTexts);
 
-
-            // 1. 配置：指定输出维度 768
-            EmbedContentConfig config = EmbedContentConfig.builder()
-                    .outputDimensionality(768)
-                    .build();
-
-            // 2. 调用 SDK：注意这里直接传 String text，不需要构造 Content 对象
-            // 对应你反编译看到的：embedContent(String model, String text, EmbedContentConfig config)
-            EmbedContentResponse response = client.models.embedContent(
-                    EMBEDDING_MODEL,
-                    text,
-                    config
-            );
-
-            // 3. 解析结果：注意处理 Optional 和 List
-            // 源码显示：public Optional<List<ContentEmbedding>> embeddings()
-            Optional<List<ContentEmbedding>> embeddingsOpt = response.embeddings();
-
-            if (embeddingsOpt.isEmpty() || embeddingsOpt.get().isEmpty()) {
-                throw new RuntimeException("Gemini API returned empty embeddings");
+            if (vectors == null || vectors.size() != requestTexts.size()) {
+                throw new RuntimeException("Gemini API returned " + (vectors == null ? 0 : vectors.size())
+                        + " embeddings for " + requestTexts.size() + " texts");
             }
 
-
-            // 获取具体的向量值 (List<Float>)
-            List<Float> values = response.embeddings()
-                    .flatMap(list -> list.stream().findFirst()) // 取列表第一个 ContentEmbedding
-                    .flatMap(ContentEmbedding::values)          // 取里面的 values (也是 Optional)
-                    .orElseThrow(() -> new RuntimeException("Failed to generate embedding"));
-
-            float[] vector = new float[values.size()];
-            for (int i = 0; i < values.size(); i++) {
-                vector[i] = values.get(i);
+            for (int i = 0; i < vectors.size(); i++) {
+                int index = requestIndexes.get(i);
+                results[index] = vectors.get(i);
+                resultCache.putEmbedding(cacheKeys[index], vectors.get(i));
             }
-            return vector;
+            return Arrays.asList(results);
 
         } catch (Exception e) {
 
@@ -174,4 +205,4 @@ public class GeminiService {
             throw new RuntimeException("Embedding generation failed", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,257 @@
+package io.github.liangxin233666.mfl.utils;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 球面 mini-batch k-means (Sculley 2010)，输入为 L2 归一化的向量，相似度用点积 (即余弦)。
+ * 1. 贪心 k-means++ 在子样本上选初始中心
+ * 2. 每轮随机取一个 batch，在 ForkJoinPool 上并行找最近中心，再按 1/累计权重 的学习率挪动中心
+ * 3. 最后对全量样本并行做一次精确分配，用簇内加权平均作为最终中心，簇内权重占比作为该中心的权重
+ */
+public final class KMeans {
+
+    // k-means++ 初始化只在这么多个点上做，O(k·m·d) 保持在毫秒级
+    private static final int INIT_SAMPLE = 4096;
+    // 中心点平均移动 (1 - cos) 小于该值即视为收敛
+    private static final double CONVERGENCE = 1e-5;
+    // 最终全量分配时每个并行任务处理的行数
+    private static final int CHUNK = 2048;
+
+    /**
+     * @param centroid 单位向量
+     * @param weight   该簇在样本中的权重占比，所有簇之和为 1
+     * @param size     簇内样本数
+     */
+    public record Cluster(float[] centroid, double weight, int size) {}
+
+    private KMeans() {}
+
+    /**
+     * @param points     L2 归一化后的样本
+     * @param weights    每个样本的权重 (null 表示全为 1)
+     * @param k          簇数上限 (样本不足时自动减少，空簇会被丢弃)
+     * @param batchSize  每轮 mini-batch 大小
+     * @param iterations 最大轮数
+     * @return 按权重降序排列的簇；没有权重大于 0 的样本时为空
+     */
+    public static List<Cluster> miniBatch(float[][] points, double[] weights, int k, int batchSize,
+                                          int iterations, long seed, ForkJoinPool pool) {
+        int n = points.length;
+        if (n == 0 || k <= 0) return List.of();
+        int dims = points[0].length;
+        double[] w = weights != null ? weights : filled(n, 1.0);
+        // 权重全为 0 时没有样本能贡献中心，否则最后算权重占比会除以 0
+        if (Arrays.stream(w).noneMatch(x -> x > 0)) return List.of();
+        Random random = new Random(seed);
+
+        float[][] centroids = initPlusPlus(points, w, Math.min(k, n), random);
+        int clusters = centroids.length;
+        double[] mass = new double[clusters];
+
+        int batch = Math.min(batchSize, n);
+        int[] sample = new int[batch];
+        int[] assigned = new int[batch];
+        for (int iter = 0; iter < iterations; iter++) {
+            for (int i = 0; i < batch; i++) sample[i] = random.nextInt(n);
+
+            // 分配是只读的，可以并行；更新必须按顺序 (学习率依赖累计权重)
+            final float[][] current = centroids;
+            pool.submit(() -> IntStream.range(0, batch).parallel()
+                    .forEach(i -> assigned[i] = nearest(current, points[sample[i]]))).join();
+
+            float[][] previous = copy(centroids);
+            for (int i = 0; i < batch; i++) {
+                int c = assigned[i];
+                double weight = w[sample[i]];
+                if (weight <= 0) continue;
+                mass[c] += weight;
+                float eta = (float) (weight / mass[c]);
+                float[] centroid = centroids[c];
+                float[] point = points[sample[i]];
+                for (int d = 0; d < dims; d++) {
+                    centroid[d] += eta * (point[d] - centroid[d]);
+                }
+            }
+
+            double shift = 0;
+            for (int c = 0; c < clusters; c++) {
+                float[] normalized = VectorUtils.normalize(centroids[c]);
+                if (normalized != null) centroids[c] = normalized;
+                shift += 1.0 - VectorUtils.dot(previous[c], centroids[c]);
+            }
+            if (shift / clusters < CONVERGENCE) break;
+        }
+
+        return finalAssignment(points, w, centroids, pool);
+    }
+
+    // ==========================================
+    // 初始化
+    // ==========================================
+
+    private static float[][] initPlusPlus(float[][] points, double[] w, int k, Random random) {
+        int m = Math.min(points.length, INIT_SAMPLE);
+        float[][] candidates = new float[m][];
+        double[] cw = new double[m];
+        for (int i = 0; i < m; i++) {
+            int index = m == points.length ? i : random.nextInt(points.length);
+            candidates[i] = points[index];
+            cw[i] = w[index];
+        }
+        // 贪心 k-means++：每步抽若干个候选，取让总代价下降最多的那个，比只抽一个稳定得多 (不容易两个中心落进同一簇)
+        int trials = 2 + (int) Math.log(k);
+
+        float[][] centroids = new float[k][];
+        centroids[0] = candidates[random.nextInt(m)].clone();
+        // 每个候选点到已选中心的最小距离平方 (距离取 1 - cos)
+        double[] distance = new double[m];
+        double total = 0;
+        for (int i = 0; i < m; i++) {
+            distance[i] = squaredDistance(candidates[i], centroids[0]);
+            total += distance[i] * cw[i];
+        }
+
+        int chosen = 1;
+        for (; chosen < k; chosen++) {
+            // 剩下的点都和已有中心重合，再选也只是重复
+            if (total <= 0) break;
+
+            double[] best = null;
+            double bestTotal = Double.MAX_VALUE;
+            int bestPick = -1;
+            for (int t = 0; t < trials; t++) {
+                int pick = sample(distance, cw, total, random);
+                double[] next = new double[m];
+                double nextTotal = 0;
+                for (int i = 0; i < m; i++) {
+                    next[i] = Math.min(distance[i], squaredDistance(candidates[i], candidates[pick]));
+                    nextTotal += next[i] * cw[i];
+                }
+                if (nextTotal < bestTotal) {
+                    bestTotal = nextTotal;
+                    best = next;
+                    bestPick = pick;
+                }
+            }
+            centroids[chosen] = candidates[bestPick].clone();
+            distance = best;
+            total = bestTotal;
+        }
+        return chosen == k ? centroids : Arrays.copyOf(centroids, chosen);
+    }
+
+    // 按 距离平方 × 权重 的比例抽一个点
+    private static int sample(double[] distance, double[] w, double total, Random random) {
+        double target = random.nextDouble() * total;
+        for (int i = 0; i < distance.length; i++) {
+            target -= distance[i] * w[i];
+            if (target <= 0 && distance[i] > 0) return i;
+        }
+        for (int i = distance.length - 1; i >= 0; i--) {
+            if (distance[i] > 0) return i;
+        }
+        return distance.length - 1;
+    }
+
+    private static double squaredDistance(float[] a, float[] b) {
+        double d = Math.max(0, 1.0 - VectorUtils.dot(a, b));
+        return d * d;
+    }
+
+    // ==========================================
+    // 全量分配 + 精确中心
+    // ==========================================
+
+    private static List<Cluster> finalAssignment(float[][] points, double[] w, float[][] centroids, ForkJoinPool pool) {
+        int n = points.length;
+        int k = centroids.length;
+        int dims = points[0].length;
+        int chunks = (n + CHUNK - 1) / CHUNK;
+
+        // 每个分块各自累加，最后合并，避免共享写
+        Partial total = pool.submit(() -> IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    Partial partial = new Partial(k, dims);
+                    int end = Math.min(n, (chunk + 1) * CHUNK);
+                    for (int i = chunk * CHUNK; i < end; i++) {
+                        int c = nearest(centroids, points[i]);
+                        partial.add(c, points[i], w[i]);
+                    }
+                    return partial;
+                })
+                .reduce(Partial::merge)
+                .orElseGet(() -> new Partial(k, dims))).join();
+
+        double totalWeight = Arrays.stream(total.mass).sum();
+        List<Cluster> result = new ArrayList<>(k);
+        for (int c = 0; c < k; c++) {
+            if (total.count[c] == 0 || total.mass[c] <= 0) continue;
+            float[] mean = new float[dims];
+            for (int d = 0; d < dims; d++) mean[d] = (float) total.sum[c][d];
+            float[] centroid = VectorUtils.normalize(mean);
+            if (centroid == null) continue;
+            result.add(new Cluster(centroid, total.mass[c] / totalWeight, total.count[c]));
+        }
+        result.sort(Comparator.comparingDouble(Cluster::weight).reversed());
+        return result;
+    }
+
+    private static final class Partial {
+        final double[][] sum;
+        final double[] mass;
+        final int[] count;
+
+        Partial(int k, int dims) {
+            sum = new double[k][dims];
+            mass = new double[k];
+            count = new int[k];
+        }
+
+        void add(int c, float[] point, double weight) {
+            double[] s = sum[c];
+            for (int d = 0; d < point.length; d++) s[d] += weight * point[d];
+            mass[c] += weight;
+            count[c]++;
+        }
+
+        Partial merge(Partial other) {
+            for (int c = 0; c < mass.length; c++) {
+                for (int d = 0; d < sum[c].length; d++) sum[c][d] += other.sum[c][d];
+                mass[c] += other.mass[c];
+                count[c] += other.count[c];
+            }
+            return this;
+        }
+    }
+
+    // ==========================================
+    // 工具
+    // ==========================================
+
+    private static int nearest(float[][] centroids, float[] point) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroids.length; c++) {
+            float score = VectorUtils.dot(centroids[c], point);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static float[][] copy(float[][] source) {
+        float[][] result = new float[source.length][];
+        for (int i = 0; i < source.length; i++) result[i] = source[i].clone();
+        return result;
+    }
+
+    private static double[] filled(int n, double value) {
+        double[] result = new double[n];
+        Arrays.fill(result, value);
+        return result;
+    }
+}
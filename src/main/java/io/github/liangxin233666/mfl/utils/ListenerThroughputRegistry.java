@@ -0,0 +1,36 @@
+package io.github.liangxin233666.mfl.utils;
+
+import org.aopalliance.intercept.MethodInterceptor;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * listenerId -> ThroughputMeter，由容器 Advice 写入、扩缩容器读取
+ */
+public class ListenerThroughputRegistry {
+
+    private final ConcurrentHashMap<String, ThroughputMeter> meters = new ConcurrentHashMap<>();
+
+    public ThroughputMeter meter(String listenerId) {
+        return meters.computeIfAbsent(listenerId, id -> new ThroughputMeter());
+    }
+
+    /**
+     * 容器级计时 Advice：包裹 invokeListener(Channel, Object data)
+     * data 为 List 时是批量监听，按消息条数记账
+     */
+    public MethodInterceptor timingInterceptor(String listenerId) {
+        ThroughputMeter meter = meter(listenerId);
+        return invocation -> {
+            Object[] args = invocation.getArguments();
+            int messages = (args.length > 1 && args[1] instanceof List<?> batch) ? batch.size() : 1;
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                meter.record(System.nanoTime() - start, messages);
+            }
+        };
+    }
+}
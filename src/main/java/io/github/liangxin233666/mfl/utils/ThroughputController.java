@@ -0,0 +1,40 @@
+package io.github.liangxin233666.mfl.utils;
+
+/**
+ * 基于利特尔法则 (Little's Law) 的消费者数量计算
+ * 稳态需要的并发 = 到达率 λ × 单条耗时 W；
+ * 再加上在目标时间内清空现有积压所需的并发 = 积压 × W / 目标时间。
+ * 与 PidController 不同，它直接知道"一个消费者每秒能消化多少"，Gemini 变慢时不会来回震荡。
+ */
+public class ThroughputController {
+
+    private final double targetDrainSeconds;
+    private final double headroom;
+    private final int minOutput;
+    private final int maxOutput;
+
+    /**
+     * @param targetDrainSeconds 积压需要在多少秒内清空 (SLA)
+     * @param headroom           冗余系数，例如 1.2 表示多留 20% 余量
+     */
+    public ThroughputController(double targetDrainSeconds, double headroom, int minOutput, int maxOutput) {
+        this.targetDrainSeconds = targetDrainSeconds;
+        this.headroom = headroom;
+        this.minOutput = minOutput;
+        this.maxOutput = maxOutput;
+    }
+
+    /**
+     * @param queueDepth     当前积压
+     * @param arrivalRate    到达率 (条/秒)
+     * @param serviceSeconds 单条处理耗时 (秒)
+     * @return 建议的总线程数
+     */
+    public int compute(long queueDepth, double arrivalRate, double serviceSeconds) {
+        double steadyState = arrivalRate * serviceSeconds;
+        double drain = queueDepth * serviceSeconds / targetDrainSeconds;
+        int desired = (int) Math.ceil((steadyState + drain) * headroom);
+
+        return Math.max(minOutput, Math.min(desired, maxOutput));
+    }
+}
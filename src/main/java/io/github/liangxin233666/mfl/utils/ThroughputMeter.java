@@ -0,0 +1,65 @@
+package io.github.liangxin233666.mfl.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个监听容器的处理耗时 / 完成数统计
+ * 消费线程只做 LongAdder 累加；扩缩容巡检时取一次快照，得到本窗口的完成数和平滑后的单条耗时。
+ */
+public class ThroughputMeter {
+
+    // 单条耗时的指数平滑系数：空闲窗口没有样本时保留上一次的估计值
+    private static final double SERVICE_TIME_ALPHA = 0.3;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    private long lastSnapshotNanos = System.nanoTime();
+    private double smoothedServiceSeconds = Double.NaN;
+
+    /**
+     * 记录一条消息的处理耗时 (含重试，即消费者被占用的总时长)
+     */
+    public void record(long elapsedNanos) {
+        record(elapsedNanos, 1);
+    }
+
+    /**
+     * 批量监听一次处理多条消息：按条数计完成数，单条耗时 = 总耗时 / 条数
+     */
+    public void record(long elapsedNanos, int messages) {
+        if (messages <= 0) return;
+        completed.add(messages);
+        totalNanos.add(elapsedNanos);
+    }
+
+    /**
+     * 取快照并清零窗口计数 (只应由扩缩容巡检线程调用)
+     */
+    public synchronized Snapshot snapshot() {
+        long now = System.nanoTime();
+        long count = completed.sumThenReset();
+        long nanos = totalNanos.sumThenReset();
+        double elapsedSeconds = Math.max((now - lastSnapshotNanos) / 1e9, 1e-3);
+        lastSnapshotNanos = now;
+
+        if (count > 0) {
+            double windowServiceSeconds = nanos / 1e9 / count;
+            smoothedServiceSeconds = Double.isNaN(smoothedServiceSeconds)
+                    ? windowServiceSeconds
+                    : SERVICE_TIME_ALPHA * windowServiceSeconds + (1 - SERVICE_TIME_ALPHA) * smoothedServiceSeconds;
+        }
+        return new Snapshot(count, elapsedSeconds, smoothedServiceSeconds);
+    }
+
+    /**
+     * @param completed      本窗口完成的消息数
+     * @param elapsedSeconds 窗口长度
+     * @param serviceSeconds 平滑后的单条处理耗时，尚无样本时为 NaN
+     */
+    public record Snapshot(long completed, double elapsedSeconds, double serviceSeconds) {
+        public boolean hasServiceTime() {
+            return !Double.isNaN(serviceSeconds);
+        }
+    }
+}
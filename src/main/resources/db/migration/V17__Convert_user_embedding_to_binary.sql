@@ -0,0 +1,21 @@
+-- 用户兴趣向量从逗号分隔的 TEXT 改为小端 float32 原始字节 (BYTEA)
+-- 768 维: 约 10KB 文本 -> 3072 字节，Java 端由 EmbeddingCodec 直接解码成 float[]
+ALTER TABLE users ADD COLUMN embedding_vector_bin BYTEA;
+
+-- float4send 输出的是大端字节，这里逐个 float 翻转成小端后按顺序拼接
+UPDATE users u
+SET embedding_vector_bin = (
+    SELECT string_agg(
+                   set_byte(set_byte(set_byte(set_byte('\x00000000'::bytea,
+                       0, get_byte(s.b, 3)),
+                       1, get_byte(s.b, 2)),
+                       2, get_byte(s.b, 1)),
+                       3, get_byte(s.b, 0)),
+                   ''::bytea ORDER BY t.ord)
+    FROM unnest(string_to_array(u.embedding_vector, ',')) WITH ORDINALITY AS t(v, ord),
+         LATERAL (SELECT float4send(trim(t.v)::float4) AS b) s
+)
+WHERE u.embedding_vector IS NOT NULL AND u.embedding_vector <> '';
+
+ALTER TABLE users DROP COLUMN embedding_vector;
+ALTER TABLE users RENAME COLUMN embedding_vector_bin TO embedding_vector;
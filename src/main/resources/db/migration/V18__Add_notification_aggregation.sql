@@ -0,0 +1,13 @@
+-- 点赞通知聚合：同一 (接收者, 类型, 文章) 在同一时间窗口内只保留一行未读通知
+-- aggregate_count   : 合并了多少次事件
+-- aggregate_window  : 时间窗口编号 (epoch 秒 / 窗口长度)，非聚合类通知为 NULL
+-- recent_actor_ids  : 最近的几个触发者，最新的在前
+ALTER TABLE notifications ADD COLUMN aggregate_count INTEGER NOT NULL DEFAULT 1;
+ALTER TABLE notifications ADD COLUMN aggregate_window BIGINT;
+ALTER TABLE notifications ADD COLUMN recent_actor_ids BIGINT[];
+
+-- 只约束"未读"的聚合行：用户读过之后，同窗口的新点赞会开一行新的未读通知
+-- 同时作为 INSERT ... ON CONFLICT 的冲突目标
+CREATE UNIQUE INDEX IF NOT EXISTS uq_notifications_aggregate_unread
+ON notifications (target_user_id, event_type, resource_id, aggregate_window)
+WHERE is_read = FALSE AND aggregate_window IS NOT NULL;
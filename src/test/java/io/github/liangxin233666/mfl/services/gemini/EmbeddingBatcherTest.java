@@ -0,0 +1,159 @@
+package io.github.liangxin233666.mfl.services.gemini;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 用本地桩 EmbeddingClient 走完整的 EmbeddingBatcher -> GeminiService.generateEmbeddings 批量路径
+ * 桩把文本 "n" 映射成第 0 维为 n 的向量，方便核对每个调用方拿回的是不是自己的结果。
+ */
+class EmbeddingBatcherTest {
+
+    private static final int DIMENSIONS = 768;
+
+    private StubEmbeddingClient stub;
+    private EmbeddingBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubEmbeddingClient();
+        // 缓存桩：getEmbeddings 默认返回空 Map，即全部未命中
+        GeminiService geminiService = new GeminiService(null, stub, new ObjectMapper(), mock(GeminiResultCache.class));
+        batcher = new EmbeddingBatcher(geminiService);
+        batcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.stop();
+    }
+
+    @Test
+    void concurrentCallsAreMergedIntoOneRequest() throws Exception {
+        List<float[]> results = embedConcurrently(8);
+
+        assertTrue(stub.calls.size() < 8, "8 个并发调用应该合并，实际请求数: " + stub.calls.size());
+        assertEquals(8, stub.calls.stream().mapToInt(List::size).sum());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, results.get(i)[0]);
+        }
+    }
+
+    @Test
+    void batchNeverExceedsMaxSize() throws Exception {
+        List<float[]> results = embedConcurrently(40);
+
+        assertTrue(stub.calls.size() >= 3);
+        assertTrue(stub.calls.stream().allMatch(call -> call.size() <= 16));
+        assertEquals(40, stub.calls.stream().mapToInt(List::size).sum());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, results.get(i)[0]);
+        }
+    }
+
+    @Test
+    void loneRequestIsSentAfterLinger() {
+        long start = System.nanoTime();
+        float[] vector = batcher.embed("7");
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(7, vector[0]);
+        assertEquals(List.of(List.of("7")), stub.calls);
+        // 单条请求会等满凑批窗口 (20ms) 再发出，但不会一直等下去
+        assertTrue(elapsedMillis >= 15, "elapsed " + elapsedMillis + "ms");
+        assertTrue(elapsedMillis < 5000, "elapsed " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void blankTextGetsZeroVectorWithoutRequest() {
+        float[] vector = batcher.embed(" ");
+
+        assertEquals(DIMENSIONS, vector.length);
+        assertEquals(0, vector[0]);
+        assertTrue(stub.calls.isEmpty());
+    }
+
+    @Test
+    void failureIsPropagatedToEveryCaller() throws Exception {
+        stub.failure = new IllegalStateException("quota exceeded");
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<float[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String text = String.valueOf(i);
+                futures.add(executor.submit(() -> batcher.embed(text)));
+            }
+            for (Future<float[]> future : futures) {
+                ExecutionException e = assertThrows(ExecutionException.class, future::get);
+                RuntimeException thrown = assertInstanceOf(RuntimeException.class, e.getCause());
+                assertEquals("Embedding generation failed", thrown.getMessage());
+                assertEquals("quota exceeded", thrown.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    void sizeMismatchFailsTheBatch() {
+        stub.dropLast = true;
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> batcher.embed("1"));
+        assertTrue(thrown.getCause().getMessage().contains("0 embeddings for 1 texts"));
+    }
+
+    @Test
+    void embedAfterStopIsRejected() {
+        batcher.stop();
+
+        assertThrows(IllegalStateException.class, () -> batcher.embed("1"));
+    }
+
+    // 同时发起 count 个调用，第 i 个调用的文本为 "i"，结果按 i 排列
+    private List<float[]> embedConcurrently(int count) throws Exception {
+        CountDownLatch ready = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<float[]>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String text = String.valueOf(i);
+                futures.add(executor.submit(() -> {
+                    ready.await();
+                    return batcher.embed(text);
+                }));
+            }
+            ready.countDown();
+            List<float[]> results = new ArrayList<>();
+            for (Future<float[]> future : futures) {
+                results.add(future.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        }
+    }
+
+    private static class StubEmbeddingClient implements EmbeddingClient {
+        final List<List<String>> calls = new CopyOnWriteArrayList<>();
+        volatile RuntimeException failure;
+        volatile boolean dropLast;
+
+        @Override
+        public List<float[]> embed(String model, int dimensions, List<String> texts) {
+            calls.add(List.copyOf(texts));
+            if (failure != null) throw failure;
+            List<float[]> vectors = new ArrayList<>();
+            for (String text : texts) {
+                float[] vector = new float[dimensions];
+                vector[0] = Float.parseFloat(text);
+                vectors.add(vector);
+            }
+            if (dropLast) vectors.remove(vectors.size() - 1);
+            return vectors;
+        }
+    }
+}
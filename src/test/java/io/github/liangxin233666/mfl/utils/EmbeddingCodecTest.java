@@ -0,0 +1,56 @@
+package io.github.liangxin233666.mfl.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingCodecTest {
+
+    @Test
+    void roundTrip() {
+        Random random = new Random(7);
+        float[] vector = new float[768];
+        for (int i = 0; i < vector.length; i++) vector[i] = (float) random.nextGaussian();
+        vector[1] = Float.MIN_VALUE;
+        vector[2] = -0.0f;
+        vector[3] = Float.MAX_VALUE;
+
+        byte[] bytes = EmbeddingCodec.encode(vector);
+
+        assertEquals(768 * Float.BYTES, bytes.length);
+        assertArrayEquals(vector, EmbeddingCodec.decode(bytes));
+    }
+
+    @Test
+    void encodesLittleEndianFloat32() {
+        // 1.0f = 0x3F800000，-2.5f = 0xC0200000，小端存储时低字节在前
+        byte[] bytes = EmbeddingCodec.encode(new float[]{1.0f, -2.5f});
+
+        assertArrayEquals(new byte[]{0x00, 0x00, (byte) 0x80, 0x3F, 0x00, 0x00, 0x20, (byte) 0xC0}, bytes);
+    }
+
+    @Test
+    void decodesLittleEndianFloat32() {
+        float[] vector = EmbeddingCodec.decode(new byte[]{0x00, 0x00, (byte) 0x80, 0x3F});
+
+        assertArrayEquals(new float[]{1.0f}, vector);
+    }
+
+    @Test
+    void nullAndEmptyInput() {
+        assertNull(EmbeddingCodec.encode(null));
+        assertEquals(0, EmbeddingCodec.encode(new float[0]).length);
+
+        // 空值视为"无向量"
+        assertNull(EmbeddingCodec.decode(null));
+        assertNull(EmbeddingCodec.decode(new byte[0]));
+    }
+
+    @Test
+    void rejectsTruncatedBytes() {
+        assertNull(EmbeddingCodec.decode(new byte[]{0x00, 0x00, (byte) 0x80}));
+        assertNull(EmbeddingCodec.decode(new byte[]{0x00, 0x00, (byte) 0x80, 0x3F, 0x00}));
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.liangxin233666.mfl.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KMeansTest {
+
+    private static final int DIMS = 64;
+    private static final long SEED = 42;
+
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void recoversSyntheticClusters() {
+        // 5 个随机方向，每个方向周围 1000 个带噪声的点
+        Random random = new Random(SEED);
+        int k = 5;
+        float[][] centres = new float[k][];
+        for (int c = 0; c < k; c++) centres[c] = VectorUtils.normalize(gaussian(random, 1.0));
+        float[][] points = new float[k * 1000][];
+        for (int i = 0; i < points.length; i++) {
+            float[] noise = gaussian(random, 0.1);
+            float[] point = centres[i % k].clone();
+            for (int d = 0; d < DIMS; d++) point[d] += noise[d];
+            points[i] = VectorUtils.normalize(point);
+        }
+
+        List<KMeans.Cluster> clusters = KMeans.miniBatch(points, null, k, 256, 100, SEED, pool);
+
+        assertEquals(k, clusters.size());
+        Set<Integer> matched = new HashSet<>();
+        for (KMeans.Cluster cluster : clusters) {
+            int best = 0;
+            for (int c = 1; c < k; c++) {
+                if (VectorUtils.dot(cluster.centroid(), centres[c]) > VectorUtils.dot(cluster.centroid(), centres[best])) best = c;
+            }
+            assertTrue(VectorUtils.dot(cluster.centroid(), centres[best]) > 0.95, "中心偏离真实簇");
+            assertTrue(matched.add(best), "两个中心落进了同一个真实簇");
+            assertEquals(0.2, cluster.weight(), 0.01);
+            assertEquals(1000, cluster.size());
+        }
+    }
+
+    @Test
+    void clustersAreSortedByWeight() {
+        // 权重 3:1 的两个簇
+        float[][] points = {unit(0), unit(0), unit(0), unit(1)};
+
+        List<KMeans.Cluster> clusters = KMeans.miniBatch(points, null, 2, 4, 10, SEED, pool);
+
+        assertEquals(2, clusters.size());
+        assertEquals(0.75, clusters.get(0).weight(), 1e-9);
+        assertEquals(0.25, clusters.get(1).weight(), 1e-9);
+        assertEquals(1.0f, VectorUtils.dot(clusters.get(0).centroid(), unit(0)), 1e-6);
+    }
+
+    @Test
+    void fewerPointsThanClusters() {
+        float[][] points = {unit(0), unit(1), unit(2)};
+
+        List<KMeans.Cluster> clusters = KMeans.miniBatch(points, null, 8, 16, 10, SEED, pool);
+
+        assertEquals(3, clusters.size());
+        for (KMeans.Cluster cluster : clusters) {
+            assertEquals(1, cluster.size());
+            assertEquals(1.0 / 3, cluster.weight(), 1e-9);
+        }
+    }
+
+    @Test
+    void identicalPointsCollapseToOneCluster() {
+        float[][] points = new float[100][];
+        Arrays.fill(points, unit(3));
+
+        List<KMeans.Cluster> clusters = KMeans.miniBatch(points, null, 8, 32, 10, SEED, pool);
+
+        assertEquals(1, clusters.size());
+        assertEquals(100, clusters.get(0).size());
+        assertEquals(1.0, clusters.get(0).weight(), 1e-9);
+        assertEquals(1.0f, VectorUtils.dot(clusters.get(0).centroid(), unit(3)), 1e-6);
+    }
+
+    @Test
+    void zeroWeightPointsDoNotFormClusters() {
+        // unit(0) 附近的点权重为 0，只有 unit(1) 的点参与
+        float[][] points = new float[20][];
+        double[] weights = new double[20];
+        for (int i = 0; i < 20; i++) {
+            points[i] = i < 10 ? unit(0) : unit(1);
+            weights[i] = i < 10 ? 0 : 1;
+        }
+
+        List<KMeans.Cluster> clusters = KMeans.miniBatch(points, weights, 2, 8, 10, SEED, pool);
+
+        assertEquals(1, clusters.size());
+        assertEquals(1.0, clusters.get(0).weight(), 1e-9);
+        assertEquals(1.0f, VectorUtils.dot(clusters.get(0).centroid(), unit(1)), 1e-6);
+    }
+
+    @Test
+    void allZeroWeightsGiveNoClusters() {
+        float[][] points = {unit(0), unit(1)};
+
+        assertTrue(KMeans.miniBatch(points, new double[]{0, 0}, 2, 2, 10, SEED, pool).isEmpty());
+    }
+
+    @Test
+    void emptyInput() {
+        assertTrue(KMeans.miniBatch(new float[0][], null, 4, 16, 10, SEED, pool).isEmpty());
+        assertTrue(KMeans.miniBatch(new float[][]{unit(0)}, null, 0, 16, 10, SEED, pool).isEmpty());
+    }
+
+    private static float[] unit(int axis) {
+        float[] vector = new float[DIMS];
+        vector[axis] = 1;
+        return vector;
+    }
+
+    private static float[] gaussian(Random random, double scale) {
+        float[] vector = new float[DIMS];
+        for (int d = 0; d < DIMS; d++) vector[d] = (float) (random.nextGaussian() * scale);
+        return vector;
+    }
+}